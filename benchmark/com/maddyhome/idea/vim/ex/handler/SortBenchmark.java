@@ -0,0 +1,52 @@
+package com.maddyhome.idea.vim.ex.handler;
+
+import com.maddyhome.idea.vim.ex.ExException;
+import org.jetbrains.plugins.ideavim.benchmark.BenchmarkText;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting the lines of the text with the flags of ":sort". The benchmark lives in the package of {@link SortHandler}
+ * in order to use the sorter of the command without an editor. There is no application here, so the large ranges are
+ * sorted in parallel on a thread pool of the benchmark instead of the pooled threads of the application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SortBenchmark {
+  @Param({"10000", "100000", "1000000"})
+  public int lines;
+
+  @Param({"", "i", "n", "u", "/=/", "r /\\d\\+/ n"})
+  public String argument;
+
+  @Setup
+  public void setUp() throws ExException {
+    text = BenchmarkText.lines(lines);
+    sorter = SortHandler.parseArgument(argument);
+    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    sorter.setExecutor(executor);
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public List<String> sort() {
+    return sorter.fun(new ArrayList<String>(text));
+  }
+
+  private List<String> text;
+  private SortHandler.LineSorter sorter;
+  private ExecutorService executor;
+}
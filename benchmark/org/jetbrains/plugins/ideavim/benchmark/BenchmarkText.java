@@ -0,0 +1,64 @@
+package org.jetbrains.plugins.ideavim.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic source-like text for the benchmarks.
+ *
+ * The text is generated from a fixed seed, so every run of a benchmark works on the same input.
+ */
+public class BenchmarkText {
+  @NotNull
+  public static List<String> lines(int count) {
+    final Random random = new Random(SEED);
+    final List<String> lines = new ArrayList<String>(count);
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      builder.setLength(0);
+      switch (random.nextInt(8)) {
+        case 0:
+          break;
+        case 1:
+          builder.append("  // ").append(word(random)).append(' ').append(word(random)).append(", ")
+            .append(word(random)).append('.');
+          break;
+        case 2:
+          builder.append("  public void ").append(word(random)).append(random.nextInt(100)).append("() {");
+          break;
+        case 3:
+          builder.append("  }");
+          break;
+        default:
+          builder.append("    ").append(word(random)).append(' ').append(word(random)).append(" = ")
+            .append(word(random)).append('(').append(word(random)).append(", ").append(random.nextInt(100000) - 50000)
+            .append(", \"").append(word(random)).append("\");");
+      }
+      lines.add(builder.toString());
+    }
+    return lines;
+  }
+
+  @NotNull
+  public static String text(int count) {
+    final StringBuilder builder = new StringBuilder();
+    for (String line : lines(count)) {
+      builder.append(line).append('\n');
+    }
+    return builder.toString();
+  }
+
+  @NotNull
+  private static String word(@NotNull Random random) {
+    return WORDS[random.nextInt(WORDS.length)];
+  }
+
+  private static final long SEED = 42;
+  @NotNull private static final String[] WORDS = {
+    "foo", "bar", "baz", "value", "result", "editor", "document", "offset", "line", "count", "index", "buffer", "String",
+    "int", "final", "return", "getText", "compute", "Runnable", "listener", "caret", "selection", "register", "mark"
+  };
+}
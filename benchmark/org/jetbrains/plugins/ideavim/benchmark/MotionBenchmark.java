@@ -0,0 +1,63 @@
+package org.jetbrains.plugins.ideavim.benchmark;
+
+import com.maddyhome.idea.vim.helper.SearchHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moving over the whole text with "w", "W" and "e" and counting its words as "g CTRL-G" does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MotionBenchmark {
+  @Param({"10000", "100000", "1000000"})
+  public int lines;
+
+  @Setup
+  public void setUp() {
+    text = BenchmarkText.text(lines);
+  }
+
+  @Benchmark
+  public int nextWord() {
+    return moveToEnd(false, false);
+  }
+
+  @Benchmark
+  public int nextBigWord() {
+    return moveToEnd(true, false);
+  }
+
+  @Benchmark
+  public int nextWordEnd() {
+    return moveToEnd(false, true);
+  }
+
+  @Benchmark
+  public int countWords() {
+    return SearchHelper.countWords(text, 0, text.length(), 0).getCount();
+  }
+
+  private int moveToEnd(boolean bigWord, boolean wordEnd) {
+    final int size = text.length();
+    int moves = 0;
+    int pos = 0;
+    while (true) {
+      final int next = wordEnd
+                       ? SearchHelper.findNextWordEnd(text, pos, size, 1, bigWord, false)
+                       : SearchHelper.findNextWord(text, pos, size, 1, bigWord, false);
+      if (next <= pos || next >= size - 1) {
+        return moves;
+      }
+      pos = next;
+      moves++;
+    }
+  }
+
+  private String text;
+}
@@ -0,0 +1,76 @@
+package org.jetbrains.plugins.ideavim.benchmark;
+
+import com.maddyhome.idea.vim.group.SearchGroup;
+import com.maddyhome.idea.vim.regexp.CharPointer;
+import com.maddyhome.idea.vim.regexp.LineIndex;
+import com.maddyhome.idea.vim.regexp.RegExp;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiling patterns, searching every match in the text as 'hlsearch' does and building the text of ":%s//.../g"
+ * with the code of the command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RegExpBenchmark {
+  @Param({"10000", "100000", "1000000"})
+  public int lines;
+
+  @Param({"value", "\\<\\h\\w*(", "-\\d\\+"})
+  public String pattern;
+
+  @Setup
+  public void setUp() {
+    index = LineIndex.forText(BenchmarkText.text(lines), 0);
+  }
+
+  @Benchmark
+  public RegExp.regprog_T compile() {
+    return new RegExp().vim_regcomp(pattern, 1);
+  }
+
+  @Benchmark
+  public int findAll() {
+    final RegExp sp = new RegExp();
+    final RegExp.regmmatch_T regmatch = newMatch(sp);
+    final int lineCount = index.getLineCount();
+    int count = 0;
+    for (int lnum = 0; lnum < lineCount; ) {
+      int col = 0;
+      int nmatch;
+      while ((nmatch = sp.vim_regexec_multi(regmatch, index, lineCount, lnum, col)) > 0) {
+        count++;
+        if (regmatch.endpos[0].lnum > 0 || regmatch.endpos[0].col == regmatch.startpos[0].col) {
+          break;
+        }
+        col = regmatch.endpos[0].col;
+      }
+      lnum += Math.max(nmatch, 1);
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int substitute() {
+    final RegExp sp = new RegExp();
+    final CharPointer sub = new CharPointer("<&>");
+    return SearchGroup.substitute(index, sp, newMatch(sp), sub, 0, index.getLineCount() - 1, true).getText().length();
+  }
+
+  @NotNull
+  private RegExp.regmmatch_T newMatch(@NotNull RegExp sp) {
+    final RegExp.regmmatch_T regmatch = new RegExp.regmmatch_T();
+    regmatch.regprog = sp.vim_regcomp(pattern, 1);
+    regmatch.rmm_ic = false;
+    return regmatch;
+  }
+
+  private LineIndex index;
+}
@@ -102,6 +102,14 @@ public class EventFacade {
     editor.getSelectionModel().removeSelectionListener(listener);
   }
 
+  public void addVisibleAreaListener(@NotNull Editor editor, @NotNull VisibleAreaListener listener) {
+    editor.getScrollingModel().addVisibleAreaListener(listener);
+  }
+
+  public void removeVisibleAreaListener(@NotNull Editor editor, @NotNull VisibleAreaListener listener) {
+    editor.getScrollingModel().removeVisibleAreaListener(listener);
+  }
+
   @NotNull
   private TypedAction getTypedAction() {
     return EditorActionManager.getInstance().getTypedAction();
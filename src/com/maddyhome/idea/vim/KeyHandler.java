@@ -105,7 +105,35 @@ public class KeyHandler {
 
   public void handleKey(@NotNull Editor editor, @NotNull KeyStroke key, @NotNull DataContext context,
                         boolean allowKeyMappings) {
+    if (handlingKey) {
+      doHandleKey(editor, key, context, allowKeyMappings);
+      return;
+    }
+    VimPlugin.executeRcCommands();
+    final long start = System.nanoTime();
+    handlingKey = true;
+    try {
+      doHandleKey(editor, key, context, allowKeyMappings);
+    }
+    finally {
+      handlingKey = false;
+      keyLatency.add(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Returns the histogram of the time spent handling the keystrokes typed by the user, including the execution of the
+   * commands and of the mappings that are run right away.
+   */
+  @NotNull
+  public static LatencyHistogram getKeyLatency() {
+    return keyLatency;
+  }
+
+  private void doHandleKey(@NotNull Editor editor, @NotNull KeyStroke key, @NotNull DataContext context,
+                           boolean allowKeyMappings) {
     VimPlugin.clearError();
+    VimPlugin.getSearch().cancelBackgroundSearch();
     // All the editor actions should be performed with top level editor!!!
     // Be careful: all the EditorActionHandler implementation should correctly process InjectedEditors
     editor = InjectedLanguageUtil.getTopLevelEditor(editor);
@@ -222,23 +250,31 @@ public class KeyHandler {
     commandState.stopMappingTimer();
 
     final List<KeyStroke> mappingKeys = commandState.getMappingKeys();
-    final List<KeyStroke> fromKeys = new ArrayList<KeyStroke>(mappingKeys);
-    fromKeys.add(key);
 
     final MappingMode mappingMode = commandState.getMappingMode();
     if (MappingMode.NVO.contains(mappingMode) && (state != State.NEW_COMMAND || currentArg != Argument.Type.NONE)) {
       return false;
     }
 
+    // Advance the node of the keys entered so far by the new key, the node is looked up again only if the mapping
+    // mode has changed in the middle of the keys
     final KeyMapping mapping = VimPlugin.getKey().getKeyMapping(mappingMode);
-    final MappingInfo mappingInfo = mapping.get(fromKeys);
+    KeyMapping.MappingNode node = mappingKeys.isEmpty() ? mapping.getRoot() : commandState.getMappingNode(mapping);
+    if (node == null) {
+      node = mapping.find(mappingKeys);
+    }
+    final KeyMapping.MappingNode next = node != null ? node.getChild(key) : null;
+    final MappingInfo mappingInfo = next != null ? next.getMappingInfo() : null;
 
-    if (mapping.isPrefix(fromKeys)) {
+    if (next != null && next.isPrefix()) {
       mappingKeys.add(key);
+      commandState.setMappingNode(mapping, next);
       commandState.startMappingTimer(new ActionListener() {
         @Override
         public void actionPerformed(ActionEvent actionEvent) {
+          final List<KeyStroke> fromKeys = new ArrayList<KeyStroke>(mappingKeys);
           mappingKeys.clear();
+          commandState.setMappingNode(null, null);
           for (KeyStroke keyStroke : fromKeys) {
             handleKey(editor, keyStroke, new EditorDataContext(editor), false);
           }
@@ -248,16 +284,23 @@ public class KeyHandler {
     }
     else if (mappingInfo != null) {
       mappingKeys.clear();
+      commandState.setMappingNode(null, null);
       final Application application = ApplicationManager.getApplication();
       final Runnable handleMappedKeys = new Runnable() {
         @Override
         public void run() {
           final boolean fromIsPrefix = isPrefix(mappingInfo.getFromKeys(), mappingInfo.getToKeys());
           boolean first = true;
-          for (KeyStroke keyStroke : mappingInfo.getToKeys()) {
-            final boolean recursive = mappingInfo.isRecursive() && !(first && fromIsPrefix);
-            handleKey(editor, keyStroke, new EditorDataContext(editor), recursive);
-            first = false;
+          mappingDepth++;
+          try {
+            for (KeyStroke keyStroke : mappingInfo.getToKeys()) {
+              final boolean recursive = mappingInfo.isRecursive() && !(first && fromIsPrefix);
+              handleKey(editor, keyStroke, new EditorDataContext(editor), recursive);
+              first = false;
+            }
+          }
+          finally {
+            mappingDepth--;
           }
         }
       };
@@ -270,10 +313,13 @@ public class KeyHandler {
       return true;
     }
     else {
-      final List<KeyStroke> unhandledKeys = new ArrayList<KeyStroke>(mappingKeys);
-      mappingKeys.clear();
-      for (KeyStroke keyStroke : unhandledKeys) {
-        handleKey(editor, keyStroke, context, false);
+      if (!mappingKeys.isEmpty()) {
+        final List<KeyStroke> unhandledKeys = new ArrayList<KeyStroke>(mappingKeys);
+        mappingKeys.clear();
+        commandState.setMappingNode(null, null);
+        for (KeyStroke keyStroke : unhandledKeys) {
+          handleKey(editor, keyStroke, context, false);
+        }
       }
       return false;
     }
@@ -423,8 +469,29 @@ public class KeyHandler {
 
     lastWasBS = ((cmd.getFlags() & Command.FLAG_IS_BACKSPACE) != 0);
 
+    final LatencyStats.Sample sample = LatencyStats.isEnabled() ? LatencyStats.start(getActionId(cmd)) : null;
+    try {
+      runCommand(editor, key, context, cmd);
+    }
+    finally {
+      LatencyStats.stop(sample);
+    }
+  }
+
+  @NotNull
+  private static String getActionId(@NotNull Command cmd) {
+    final String id = ActionManager.getInstance().getId(cmd.getAction());
+    return id != null ? id : cmd.getType().toString();
+  }
+
+  private void runCommand(@NotNull Editor editor, @NotNull KeyStroke key, @NotNull DataContext context,
+                          @NotNull Command cmd) {
     Project project = editor.getProject();
-    if (cmd.getType().isRead() || project == null || EditorHelper.canEdit(project, editor)) {
+    if (cmd == motionCommand && ApplicationManager.getApplication().isDispatchThread()) {
+      // A motion without an argument only moves the caret, so it doesn't need an undoable command
+      ActionRunner.run(editor, context, cmd, key);
+    }
+    else if (cmd.getType().isRead() || project == null || EditorHelper.canEdit(project, editor)) {
       if (ApplicationManager.getApplication().isDispatchThread()) {
         Runnable action = new ActionRunner(editor, context, cmd, key);
         String name = cmd.getAction().getTemplatePresentation().getText();
@@ -447,7 +514,7 @@ public class KeyHandler {
                                      @NotNull CommandState editorState, @NotNull ArgumentNode node) {
     // Create a new command based on what the user has typed so far, excluding this keystroke.
     Command cmd = new Command(count, node.getActionId(), node.getAction(), node.getCmdType(), node.getFlags());
-    cmd.setKeys(keys);
+    setKeys(cmd);
     currentCmd.push(cmd);
     // What type of argument does this command expect?
     switch (node.getArgType()) {
@@ -492,13 +559,13 @@ public class KeyHandler {
       if (node.getCmdType() == Command.Type.MOTION) {
         // Create the motion command and add it to the stack
         Command cmd = new Command(count, node.getActionId(), node.getAction(), node.getCmdType(), node.getFlags());
-        cmd.setKeys(keys);
+        setKeys(cmd);
         currentCmd.push(cmd);
       }
       else if (node.getCmdType() == Command.Type.RESET) {
         currentCmd.clear();
         Command cmd = new Command(1, node.getActionId(), node.getAction(), node.getCmdType(), node.getFlags());
-        cmd.setKeys(keys);
+        setKeys(cmd);
         currentCmd.push(cmd);
       }
       else {
@@ -516,8 +583,15 @@ public class KeyHandler {
     // The user entered a valid command that doesn't take any arguments
     else {
       // Create the command and add it to the stack
-      Command cmd = new Command(count, node.getActionId(), node.getAction(), node.getCmdType(), node.getFlags());
-      cmd.setKeys(keys);
+      final Command cmd;
+      if (node.getCmdType() == Command.Type.MOTION && currentArg == Argument.Type.NONE && currentCmd.isEmpty() &&
+          !motionCommandInUse) {
+        cmd = getMotionCommand(node);
+      }
+      else {
+        cmd = new Command(count, node.getActionId(), node.getAction(), node.getCmdType(), node.getFlags());
+        setKeys(cmd);
+      }
       currentCmd.push(cmd);
 
       // This is a sanity check that the command has a valid action. This should only fail if the
@@ -556,6 +630,40 @@ public class KeyHandler {
     }
   }
 
+  /**
+   * Returns the command object reused for the motions that are not arguments of other commands. Such a motion is
+   * executed right away and the command isn't needed after that.
+   */
+  @NotNull
+  private Command getMotionCommand(@NotNull CommandNode node) {
+    if (motionCommand == null) {
+      motionCommand = new Command(count, node.getActionId(), node.getAction(), node.getCmdType(), node.getFlags());
+      motionCommand.setKeys(new ArrayList<KeyStroke>());
+    }
+    else {
+      motionCommand.init(count, node.getActionId(), node.getAction(), node.getCmdType(), node.getFlags());
+    }
+    final List<KeyStroke> motionKeys = motionCommand.getKeys();
+    motionKeys.clear();
+    for (int i = 0; i < keys.size(); i++) {
+      motionKeys.add(keys.get(i));
+    }
+    motionCommandInUse = true;
+    return motionCommand;
+  }
+
+  private void setKeys(@NotNull Command cmd) {
+    cmd.setKeys(keys);
+    keysShared = true;
+  }
+
+  /**
+   * Returns true while the keys of a mapping are being handled.
+   */
+  public boolean isExecutingMapping() {
+    return mappingDepth > 0;
+  }
+
   /**
    * Execute an action by name
    *
@@ -598,7 +706,13 @@ public class KeyHandler {
    */
   private void partialReset(@Nullable Editor editor) {
     count = 0;
-    keys = new ArrayList<KeyStroke>();
+    if (keys == null || keysShared) {
+      keys = new ArrayList<KeyStroke>();
+      keysShared = false;
+    }
+    else {
+      keys.clear();
+    }
     CommandState editorState = CommandState.getInstance(editor);
     editorState.stopMappingTimer();
     editorState.getMappingKeys().clear();
@@ -614,6 +728,7 @@ public class KeyHandler {
     partialReset(editor);
     state = State.NEW_COMMAND;
     currentCmd.clear();
+    motionCommandInUse = false;
     currentArg = Argument.Type.NONE;
     digraph = null;
   }
@@ -645,6 +760,11 @@ public class KeyHandler {
     }
 
     public void run() {
+      run(editor, context, cmd, key);
+    }
+
+    public static void run(@NotNull Editor editor, @NotNull DataContext context, @NotNull Command cmd,
+                           @NotNull KeyStroke key) {
       CommandState editorState = CommandState.getInstance(editor);
       boolean wasRecording = editorState.isRecording();
 
@@ -700,6 +820,12 @@ public class KeyHandler {
   @Nullable private DigraphSequence digraph = null;
   private char lastChar;
   private boolean lastWasBS;
+  private int mappingDepth = 0;
+  private boolean keysShared = false;
+  @Nullable private Command motionCommand = null;
+  private boolean motionCommandInUse = false;
+  private boolean handlingKey = false;
 
   private static KeyHandler instance;
+  @NotNull private static final LatencyHistogram keyLatency = new LatencyHistogram();
 }
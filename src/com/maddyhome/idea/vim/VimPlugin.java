@@ -40,11 +40,12 @@ import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.wm.StatusBar;
 import com.intellij.openapi.wm.WindowManager;
-import com.maddyhome.idea.vim.ex.CommandParser;
+import com.maddyhome.idea.vim.ex.ExCommand;
 import com.maddyhome.idea.vim.ex.vimscript.VimScriptParser;
 import com.maddyhome.idea.vim.group.*;
 import com.maddyhome.idea.vim.helper.DocumentManager;
 import com.maddyhome.idea.vim.helper.MacKeyRepeat;
+import com.maddyhome.idea.vim.helper.WordCountIndex;
 import com.maddyhome.idea.vim.option.Options;
 import com.maddyhome.idea.vim.ui.VimEmulationConfigurable;
 import org.jdom.Element;
@@ -54,6 +55,10 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.event.HyperlinkEvent;
 import java.awt.*;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * This plugin attempts to emulate the key binding and general functionality of Vim and gVim. See the supplied
@@ -79,6 +84,7 @@ public class VimPlugin implements ApplicationComponent, PersistentStateComponent
   public static final int STATE_VERSION = 4;
 
   private boolean error = false;
+  @Nullable private String message = null;
 
   private int previousStateVersion = 0;
   private String previousKeyMap = "";
@@ -86,6 +92,9 @@ public class VimPlugin implements ApplicationComponent, PersistentStateComponent
   // It is enabled by default to avoid any special configuration after plugin installation
   private boolean enabled = true;
 
+  // The commands of the rc file being parsed, accessed only in the event dispatch thread
+  @Nullable private Future<List<ExCommand>> rcCommands = null;
+
   private static final Logger LOG = Logger.getInstance(VimPlugin.class);
 
   @NotNull private final MotionGroup motion;
@@ -149,14 +158,22 @@ public class VimPlugin implements ApplicationComponent, PersistentStateComponent
     // Add some listeners so we can handle special events
     setupListeners();
 
-    // Register ex handlers
-    CommandParser.getInstance().registerHandlers();
-
     if (!ApplicationManager.getApplication().isUnitTestMode()) {
-      final File ideaVimRc = VimScriptParser.findIdeaVimRc();
-      if (ideaVimRc != null) {
-        VimScriptParser.executeFile(ideaVimRc);
-      }
+      // Read and parse the rc file in the background, its commands are executed before the first key is handled
+      rcCommands = ApplicationManager.getApplication().executeOnPooledThread(new Callable<List<ExCommand>>() {
+        @Nullable
+        @Override
+        public List<ExCommand> call() {
+          final File ideaVimRc = VimScriptParser.findIdeaVimRc();
+          return ideaVimRc != null ? VimScriptParser.parseFile(ideaVimRc) : null;
+        }
+      });
+      ApplicationManager.getApplication().invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          executeRcCommands();
+        }
+      });
     }
 
     LOG.debug("done");
@@ -328,11 +345,22 @@ public class VimPlugin implements ApplicationComponent, PersistentStateComponent
     }
   }
 
+  /**
+   * Returns the last message shown in unit test mode.
+   */
+  @Nullable
+  public static String getMessage() {
+    return getInstance().message;
+  }
+
   public static void showMode(String msg) {
     showMessage(msg);
   }
 
   public static void showMessage(@Nullable String msg) {
+    if (ApplicationManager.getApplication().isUnitTestMode() && msg != null && msg.length() > 0) {
+      getInstance().message = msg;
+    }
     ProjectManager pm = ProjectManager.getInstance();
     Project[] projects = pm.getOpenProjects();
     for (Project project : projects) {
@@ -348,6 +376,31 @@ public class VimPlugin implements ApplicationComponent, PersistentStateComponent
     }
   }
 
+  /**
+   * Executes the commands of the rc file if they haven't been executed yet, waiting for the file to be parsed.
+   */
+  public static void executeRcCommands() {
+    final VimPlugin plugin = getInstance();
+    final Future<List<ExCommand>> future = plugin.rcCommands;
+    if (future == null) {
+      return;
+    }
+    plugin.rcCommands = null;
+    List<ExCommand> commands = null;
+    try {
+      commands = future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e) {
+      LOG.error(e.getCause());
+    }
+    if (commands != null) {
+      VimScriptParser.executeCommands(commands);
+    }
+  }
+
   @NotNull
   private static VimPlugin getInstance() {
     return (VimPlugin)ApplicationManager.getApplication().getComponent(IDEAVIM_COMPONENT_NAME);
@@ -358,6 +411,7 @@ public class VimPlugin implements ApplicationComponent, PersistentStateComponent
 
     getEditor().turnOn();
     getMotion().turnOn();
+    getSearch().turnOn();
   }
 
   private void turnOffPlugin() {
@@ -365,6 +419,7 @@ public class VimPlugin implements ApplicationComponent, PersistentStateComponent
 
     getEditor().turnOff();
     getMotion().turnOff();
+    getSearch().turnOff();
   }
 
   private void updateState() {
@@ -443,6 +498,7 @@ public class VimPlugin implements ApplicationComponent, PersistentStateComponent
 
     DocumentManager.getInstance().addDocumentListener(new MarkGroup.MarkUpdater());
     DocumentManager.getInstance().addDocumentListener(new SearchGroup.DocumentSearchListener());
+    DocumentManager.getInstance().addDocumentListener(new WordCountIndex.DocumentUpdater());
 
     eventFacade.addProjectManagerListener(new ProjectManagerAdapter() {
       @Override
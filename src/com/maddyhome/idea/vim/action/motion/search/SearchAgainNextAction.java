@@ -38,5 +38,11 @@ public class SearchAgainNextAction extends MotionEditorAction {
     public int getOffset(@NotNull Editor editor, DataContext context, int count, int rawCount, Argument argument) {
       return VimPlugin.getSearch().searchNext(editor, count);
     }
+
+    @Override
+    protected int getMoveOffset(@NotNull Editor editor, DataContext context, int count, int rawCount,
+                                Argument argument) {
+      return VimPlugin.getSearch().searchNext(editor, count, true);
+    }
   }
 }
@@ -38,5 +38,11 @@ public class SearchAgainPreviousAction extends MotionEditorAction {
     public int getOffset(@NotNull Editor editor, DataContext context, int count, int rawCount, Argument argument) {
       return VimPlugin.getSearch().searchPrevious(editor, count);
     }
+
+    @Override
+    protected int getMoveOffset(@NotNull Editor editor, DataContext context, int count, int rawCount,
+                                Argument argument) {
+      return VimPlugin.getSearch().searchPrevious(editor, count, true);
+    }
   }
 }
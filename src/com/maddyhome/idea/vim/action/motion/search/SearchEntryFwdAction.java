@@ -43,5 +43,15 @@ public class SearchEntryFwdAction extends MotionEditorAction {
       }
       return VimPlugin.getSearch().search(editor, command, count, Command.FLAG_SEARCH_FWD, false);
     }
+
+    @Override
+    protected int getMoveOffset(@NotNull Editor editor, DataContext context, int count, int rawCount,
+                                @NotNull Argument argument) {
+      final String command = argument.getString();
+      if (command == null) {
+        return -1;
+      }
+      return VimPlugin.getSearch().search(editor, command, count, Command.FLAG_SEARCH_FWD, false, true);
+    }
   }
 }
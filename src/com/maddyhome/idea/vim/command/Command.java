@@ -186,6 +186,18 @@ public class Command {
    * @param flags  Any custom flags specific to this command
    */
   public Command(int count, String actionId, AnAction action, @NotNull Type type, int flags) {
+    init(count, actionId, action, type, flags);
+  }
+
+  /**
+   * Reinitializes the command as a new command that doesn't require an argument, so a command object can be reused
+   *
+   * @param count  The number entered prior to the command (zero if no specific number)
+   * @param action The action to be executed when the command is run
+   * @param type   The type of the command
+   * @param flags  Any custom flags specific to this command
+   */
+  public void init(int count, String actionId, AnAction action, @NotNull Type type, int flags) {
     this.count = count;
     this.action = action;
     this.type = type;
@@ -323,7 +335,7 @@ public class Command {
 
   private int count;
   private AnAction action;
-  @NotNull private final Type type;
+  @NotNull private Type type;
   private int flags;
   @Nullable private Argument argument;
   private List<KeyStroke> keys;
@@ -21,6 +21,7 @@ package com.maddyhome.idea.vim.command;
 import com.intellij.openapi.editor.Editor;
 import com.maddyhome.idea.vim.VimPlugin;
 import com.maddyhome.idea.vim.helper.EditorData;
+import com.maddyhome.idea.vim.key.KeyMapping;
 import com.maddyhome.idea.vim.key.ParentNode;
 import com.maddyhome.idea.vim.option.NumberOption;
 import com.maddyhome.idea.vim.option.Options;
@@ -44,6 +45,8 @@ public class CommandState {
   @Nullable private Command myCommand;
   @NotNull private ParentNode myCurrentNode = VimPlugin.getKey().getKeyRoot(getMappingMode());
   @NotNull private final List<KeyStroke> myMappingKeys = new ArrayList<KeyStroke>();
+  @Nullable private KeyMapping myMapping;
+  @Nullable private KeyMapping.MappingNode myMappingNode;
   @NotNull private final Timer myMappingTimer;
   private int myFlags;
   private boolean myIsRecording = false;
@@ -138,6 +141,19 @@ public class CommandState {
     return myMappingKeys;
   }
 
+  /**
+   * Returns the node of the mapping keys entered so far if it was found in the given key mapping.
+   */
+  @Nullable
+  public KeyMapping.MappingNode getMappingNode(@NotNull KeyMapping mapping) {
+    return mapping == myMapping ? myMappingNode : null;
+  }
+
+  public void setMappingNode(@Nullable KeyMapping mapping, @Nullable KeyMapping.MappingNode node) {
+    myMapping = mapping;
+    myMappingNode = node;
+  }
+
   public void startMappingTimer(@NotNull ActionListener actionListener) {
     final NumberOption timeoutLength = Options.getInstance().getNumberOption("timeoutlen");
     if (timeoutLength != null) {
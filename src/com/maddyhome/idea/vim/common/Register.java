@@ -25,26 +25,33 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.event.KeyEvent;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
 /**
  * Represents a register.
+ *
+ * The contents of yanks and deletes are kept as text. Keystrokes are stored only for registers containing recorded
+ * keys that can't be represented as text.
  */
 public class Register {
   private char name;
   @NotNull private final SelectionType type;
-  @NotNull private final List<KeyStroke> keys;
+  @Nullable private String text;
+  @Nullable private List<KeyStroke> keys;
 
   public Register(char name, @NotNull SelectionType type, @NotNull String text) {
     this.name = name;
     this.type = type;
-    this.keys = StringHelper.stringToKeys(text);
+    this.text = text;
+    this.keys = null;
   }
 
   public Register(char name, @NotNull SelectionType type, @NotNull List<KeyStroke> keys) {
     this.name = name;
     this.type = type;
+    this.text = null;
     this.keys = keys;
   }
 
@@ -72,34 +79,63 @@ public class Register {
    */
   @Nullable
   public String getText() {
-    final StringBuilder builder = new StringBuilder();
-    for (KeyStroke key : keys) {
-      final char c = key.getKeyChar();
-      if (c == KeyEvent.CHAR_UNDEFINED) {
-        return null;
-      }
-      builder.append(c);
+    if (text != null) {
+      return text;
     }
-    return builder.toString();
+    return keys != null ? keysToText(keys) : null;
   }
 
   /**
    * Get the sequence of keys in the register.
+   *
+   * The keys of a register containing text are created on each call.
    */
   @NotNull
   public List<KeyStroke> getKeys() {
-    return keys;
+    if (keys != null) {
+      return keys;
+    }
+    return text != null ? StringHelper.stringToKeys(text) : new ArrayList<KeyStroke>();
   }
 
   /**
    * Append the supplied text to any existing text.
    */
   public void addText(@NotNull String text) {
-    addKeys(StringHelper.stringToKeys(text));
+    if (this.text != null) {
+      this.text = this.text + text;
+    }
+    else if (keys != null) {
+      keys.addAll(StringHelper.stringToKeys(text));
+    }
   }
 
   public void addKeys(@NotNull List<KeyStroke> keys) {
-    this.keys.addAll(keys);
+    if (text != null) {
+      final String s = keysToText(keys);
+      if (s != null) {
+        text = text + s;
+        return;
+      }
+      this.keys = StringHelper.stringToKeys(text);
+      text = null;
+    }
+    if (this.keys != null) {
+      this.keys.addAll(keys);
+    }
+  }
+
+  @Nullable
+  private static String keysToText(@NotNull List<KeyStroke> keys) {
+    final StringBuilder builder = new StringBuilder(keys.size());
+    for (KeyStroke key : keys) {
+      final char c = key.getKeyChar();
+      if (c == KeyEvent.CHAR_UNDEFINED) {
+        return null;
+      }
+      builder.append(c);
+    }
+    return builder.toString();
   }
 
   public static class KeySorter<V> implements Comparator<V> {
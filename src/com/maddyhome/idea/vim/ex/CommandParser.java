@@ -65,7 +65,8 @@ public class CommandParser {
   }
 
   /**
-   * Registers all the supported Ex commands
+   * Registers all the supported Ex commands. It is done on the first lookup of an Ex command, so that the handlers
+   * aren't created during the startup of the IDE.
    */
   public void registerHandlers() {
     if (registered) return;
@@ -84,6 +85,7 @@ public class CommandParser {
     new FindClassHandler();
     new FindFileHandler();
     new FindSymbolHandler();
+    new GlobalHandler();
     new GotoCharacterHandler();
     //new GotoLineHandler(); - not needed here
     new HelpHandler();
@@ -117,6 +119,7 @@ public class CommandParser {
     new SplitHandler();
     new SubstituteHandler();
     new UndoHandler();
+    new VimStatsHandler();
     new WriteAllHandler();
     new WriteHandler();
     new WriteNextFileHandler();
@@ -161,6 +164,22 @@ public class CommandParser {
    */
   public int processCommand(@NotNull Editor editor, @NotNull DataContext context, @NotNull String cmd,
                             int count) throws ExException {
+    return processCommand(editor, context, cmd, count, true);
+  }
+
+  /**
+   * Parse and execute an Ex command
+   *
+   * @param editor      The editor to run the command in
+   * @param context     The data context
+   * @param cmd         The text of the command
+   * @param count       The count entered before the colon
+   * @param saveHistory Whether the command is saved in the history and in the ':' register
+   * @return A bitwise collection of flags, if any, from the result of running the command.
+   * @throws ExException if any part of the command is invalid or unknown
+   */
+  public int processCommand(@NotNull Editor editor, @NotNull DataContext context, @NotNull String cmd,
+                            int count, boolean saveHistory) throws ExException {
     // Nothing entered
     int result = 0;
     if (cmd.length() == 0) {
@@ -168,7 +187,9 @@ public class CommandParser {
     }
 
     // Save the command history
-    VimPlugin.getHistory().addEntry(HistoryGroup.COMMAND, cmd);
+    if (saveHistory) {
+      VimPlugin.getHistory().addEntry(HistoryGroup.COMMAND, cmd);
+    }
 
     // Parse the command
     final ExCommand command = parse(cmd);
@@ -186,7 +207,7 @@ public class CommandParser {
 
     // Run the command
     boolean ok = handler.process(editor, context, command, count);
-    if (ok && (handler.getArgFlags() & CommandHandler.DONT_SAVE_LAST) == 0) {
+    if (ok && saveHistory && (handler.getArgFlags() & CommandHandler.DONT_SAVE_LAST) == 0) {
       VimPlugin.getRegister().storeTextInternal(editor, new TextRange(-1, -1), cmd,
                                                                   SelectionType.CHARACTER_WISE, ':', false);
     }
@@ -205,6 +226,7 @@ public class CommandParser {
     if (cmd.length() == 0) {
       return new GotoLineHandler();
     }
+    registerHandlers();
     // See if the user entered a supported command by checking each character entered
     CommandNode node = root;
     for (int i = 0; i < cmd.length(); i++) {
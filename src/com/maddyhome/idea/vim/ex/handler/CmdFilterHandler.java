@@ -28,8 +28,6 @@ import com.maddyhome.idea.vim.helper.MessageHelper;
 import com.maddyhome.idea.vim.helper.Msg;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.IOException;
-
 /**
  *
  */
@@ -55,22 +53,15 @@ public class CmdFilterHandler extends CommandHandler {
       command = command.replaceAll("!", last);
     }
 
-    try {
-      Ranges ranges = cmd.getRanges();
-      if (ranges.size() == 0) {
-        // Show command output in a window
-        String commandOutput = VimPlugin.getProcess().executeCommand(command, null);
-        ExOutputModel.getInstance(editor).output(commandOutput);
-        return true;
-      }
-      else {
-        // Filter
-        TextRange range = cmd.getTextRange(editor, context, false);
-        return VimPlugin.getProcess().executeFilter(editor, range, command);
-      }
+    Ranges ranges = cmd.getRanges();
+    if (ranges.size() == 0) {
+      // Show command output in a window
+      return VimPlugin.getProcess().executeShellCommand(editor, command);
     }
-    catch (IOException e) {
-      throw new ExException(e.getMessage());
+    else {
+      // Filter
+      TextRange range = cmd.getTextRange(editor, context, false);
+      return VimPlugin.getProcess().executeFilter(editor, range, command);
     }
   }
 
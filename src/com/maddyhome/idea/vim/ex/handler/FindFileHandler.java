@@ -40,7 +40,7 @@ public class FindFileHandler extends CommandHandler {
   public boolean execute(@NotNull Editor editor, @NotNull final DataContext context, @NotNull ExCommand cmd) throws ExException {
     String arg = cmd.getArgument();
     if (arg.length() > 0) {
-      boolean res = VimPlugin.getFile().openFile(arg, context);
+      boolean res = VimPlugin.getFile().openFile(arg, context, true);
       if (res) {
         VimPlugin.getMark().saveJumpLocation(editor);
       }
@@ -0,0 +1,238 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2014 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.maddyhome.idea.vim.ex.handler;
+
+import com.intellij.openapi.actionSystem.DataContext;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.event.DocumentAdapter;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.util.text.StringUtil;
+import com.maddyhome.idea.vim.VimPlugin;
+import com.maddyhome.idea.vim.ex.*;
+import com.maddyhome.idea.vim.group.MotionGroup;
+import com.maddyhome.idea.vim.helper.EditorHelper;
+import com.maddyhome.idea.vim.helper.MessageHelper;
+import com.maddyhome.idea.vim.helper.Msg;
+import com.maddyhome.idea.vim.regexp.CharHelper;
+import com.maddyhome.idea.vim.regexp.CharPointer;
+import com.maddyhome.idea.vim.regexp.CharacterClasses;
+import com.maddyhome.idea.vim.regexp.RegExp;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+
+/**
+ * Executes an Ex command for each line matching a pattern, see :help :global.
+ *
+ * All the matching lines are marked before the first command is run. The marks follow the lines when the commands
+ * insert or delete lines and the marks of deleted lines are removed. Everything is done within the Ex command being
+ * executed, so the changes are undone in one step.
+ */
+public class GlobalHandler extends CommandHandler {
+  public GlobalHandler() {
+    super(new CommandName[]{
+      new CommandName("g", "lobal"),
+      new CommandName("v", "global")
+    }, RANGE_OPTIONAL | ARGUMENT_REQUIRED | WRITABLE);
+  }
+
+  public boolean execute(@NotNull Editor editor, @NotNull DataContext context, @NotNull ExCommand cmd) throws ExException {
+    if (running) {
+      throw new ExException(MessageHelper.message(Msg.E147));
+    }
+
+    boolean invert = cmd.getCommand().startsWith("v");
+    CharPointer arg = new CharPointer(new StringBuffer(cmd.getArgument().trim()));
+    if (arg.charAt() == '!') {
+      invert = true;
+      arg.inc();
+      arg = CharHelper.skipwhite(arg);
+    }
+
+    final char delimiter = arg.charAt();
+    if (CharacterClasses.isAlpha(delimiter)) {
+      throw new ExException(MessageHelper.message(Msg.E146));
+    }
+    if (arg.isNul() || delimiter == '"' || delimiter == '|' || delimiter == '\\') {
+      throw new InvalidArgumentException(MessageHelper.message(Msg.e_invarg, cmd.getArgument()));
+    }
+
+    arg.inc();
+    final CharPointer start = arg.ref(0);
+    final CharPointer end = RegExp.skip_regexp(arg, delimiter, true);
+    final String pattern = start.substring(end.pointer() - start.pointer());
+    final String command = end.charAt() == delimiter ? end.ref(1).toString().trim() : "";
+
+    final LineRange range;
+    if (cmd.getRanges().size() == 0) {
+      range = new LineRange(0, EditorHelper.getLineCount(editor) - 1);
+    }
+    else {
+      range = cmd.getLineRange(editor, context);
+    }
+
+    final BitSet lines = VimPlugin.getSearch().markMatchingLines(editor, range, pattern);
+    if (lines == null) {
+      return false;
+    }
+    if (invert) {
+      lines.flip(range.getStartLine(), range.getEndLine() + 1);
+    }
+
+    if (lines.isEmpty()) {
+      final String message = invert ? Msg.e_patfoundall : Msg.e_patnotf2;
+      VimPlugin.showMessage(MessageHelper.message(message, VimPlugin.getSearch().getLastPattern()));
+      return true;
+    }
+
+    if (command.length() == 0) {
+      printLines(editor, lines);
+      return true;
+    }
+
+    final LineMarks marks = new LineMarks(lines);
+    final Document document = editor.getDocument();
+    running = true;
+    document.addDocumentListener(marks);
+    try {
+      for (int line = marks.next(); line >= 0; line = marks.next()) {
+        MotionGroup.moveCaret(editor, EditorHelper.getLineStartOffset(editor, line));
+        CommandParser.getInstance().processCommand(editor, context, command, 1, false);
+      }
+    }
+    finally {
+      document.removeDocumentListener(marks);
+      running = false;
+    }
+
+    MotionGroup.moveCaret(editor, VimPlugin.getMotion().moveCaretToLineStartSkipLeading(editor));
+
+    return true;
+  }
+
+  private static void printLines(@NotNull Editor editor, @NotNull BitSet lines) {
+    final StringBuilder builder = new StringBuilder();
+    for (int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)) {
+      builder.append(EditorHelper.getLineText(editor, line)).append('\n');
+    }
+    ExOutputModel.getInstance(editor).output(builder.toString());
+  }
+
+  /**
+   * The marked lines that haven't been processed yet.
+   *
+   * The lines are kept in a sorted array together with an offset shared by all of them. A change that inserts or
+   * deletes lines before the next marked line, which is the usual case, only updates the offset.
+   */
+  private static class LineMarks extends DocumentAdapter {
+    public LineMarks(@NotNull BitSet bits) {
+      lines = new int[bits.cardinality()];
+      int i = 0;
+      for (int line = bits.nextSetBit(0); line >= 0; line = bits.nextSetBit(line + 1)) {
+        lines[i++] = line;
+      }
+    }
+
+    /**
+     * Returns the next marked line or -1 if there are no marks left.
+     */
+    public int next() {
+      while (next < lines.length && lines[next] == REMOVED) {
+        next++;
+      }
+      return next < lines.length ? lines[next++] + offset : -1;
+    }
+
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+      final Document document = event.getDocument();
+      final int line = document.getLineNumber(event.getOffset());
+      final boolean atLineStart = event.getOffset() == document.getLineStartOffset(line);
+
+      final CharSequence oldFragment = event.getOldFragment();
+      final int oldLines = StringUtil.countNewLines(oldFragment);
+      if (oldLines > 0) {
+        if (atLineStart && oldFragment.charAt(oldFragment.length() - 1) == '\n') {
+          removeLines(line, line + oldLines);
+        }
+        else {
+          removeLines(line + 1, line + oldLines + 1);
+        }
+      }
+
+      final CharSequence newFragment = event.getNewFragment();
+      final int newLines = StringUtil.countNewLines(newFragment);
+      if (newLines > 0) {
+        if (atLineStart && newFragment.charAt(newFragment.length() - 1) == '\n') {
+          shiftLines(line, newLines);
+        }
+        else {
+          shiftLines(line + 1, newLines);
+        }
+      }
+    }
+
+    /**
+     * Removes the marks of the lines from start to end exclusive and moves the marks after them up.
+     */
+    private void removeLines(int start, int end) {
+      for (int i = next; i < lines.length; i++) {
+        if (lines[i] == REMOVED) {
+          continue;
+        }
+        final int line = lines[i] + offset;
+        if (line >= end) {
+          break;
+        }
+        if (line >= start) {
+          lines[i] = REMOVED;
+        }
+        else {
+          lines[i] += end - start;
+        }
+      }
+      offset -= end - start;
+    }
+
+    /**
+     * Moves the marks of the lines starting from the given one down by the number of lines.
+     */
+    private void shiftLines(int start, int count) {
+      for (int i = next; i < lines.length; i++) {
+        if (lines[i] == REMOVED) {
+          continue;
+        }
+        if (lines[i] + offset >= start) {
+          break;
+        }
+        lines[i] -= count;
+      }
+      offset += count;
+    }
+
+    private static final int REMOVED = Integer.MIN_VALUE;
+
+    @NotNull private final int[] lines;
+    private int next = 0;
+    private int offset = 0;
+  }
+
+  private static boolean running = false;
+}
@@ -19,18 +19,29 @@
 package com.maddyhome.idea.vim.ex.handler;
 
 import com.intellij.openapi.actionSystem.DataContext;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.LogicalPosition;
 import com.intellij.openapi.editor.SelectionModel;
-import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.Function;
 import com.maddyhome.idea.vim.VimPlugin;
-import com.maddyhome.idea.vim.ex.CommandHandler;
-import com.maddyhome.idea.vim.ex.ExCommand;
-import com.maddyhome.idea.vim.ex.ExException;
-import com.maddyhome.idea.vim.ex.LineRange;
+import com.maddyhome.idea.vim.ex.*;
+import com.maddyhome.idea.vim.helper.MessageHelper;
+import com.maddyhome.idea.vim.helper.Msg;
+import com.maddyhome.idea.vim.option.Options;
+import com.maddyhome.idea.vim.regexp.LineIndex;
+import com.maddyhome.idea.vim.regexp.RegExp;
+import com.maddyhome.idea.vim.regexp.RegExpCache;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * @author Alex Selesse
@@ -43,17 +54,99 @@ public class SortHandler extends CommandHandler {
   @Override
   public boolean execute(@NotNull Editor editor, @NotNull DataContext context,
                          @NotNull ExCommand cmd) throws ExException {
-    final String arg = cmd.getArgument();
-    final boolean nonEmptyArg = arg.trim().length() > 0;
+    final LineRange range = getLineRange(editor, context, cmd);
+    final LineSorter sorter = parseArgument(cmd.getArgument());
+    if (sorter == null) {
+      return false;
+    }
 
-    final boolean reverse = nonEmptyArg && arg.contains("!");
-    final boolean ignoreCase = nonEmptyArg && arg.contains("i");
-    final boolean number = nonEmptyArg && arg.contains("n");
+    return VimPlugin.getChange().sortRange(editor, range, sorter);
+  }
 
-    final LineRange range = getLineRange(editor, context, cmd);
-    final Comparator<String> lineComparator = new LineComparator(ignoreCase, number, reverse);
+  /**
+   * Parses the flags and the optional pattern of the command, see :help :sort.
+   */
+  @Nullable
+  static LineSorter parseArgument(@NotNull String arg) throws ExException {
+    boolean reverse = false;
+    boolean ignoreCase = false;
+    boolean unique = false;
+    boolean useMatch = false;
+    int base = 0;
+    String pattern = null;
+
+    for (int i = 0; i < arg.length(); i++) {
+      final char c = arg.charAt(i);
+      if (Character.isWhitespace(c)) {
+        continue;
+      }
+      switch (c) {
+        case '!':
+          reverse = true;
+          break;
+        case 'i':
+          ignoreCase = true;
+          break;
+        case 'u':
+          unique = true;
+          break;
+        case 'r':
+          useMatch = true;
+          break;
+        case 'n':
+          base = 10;
+          break;
+        case 'x':
+          base = 16;
+          break;
+        case 'o':
+          base = 8;
+          break;
+        case 'b':
+          base = 2;
+          break;
+        default:
+          if (Character.isLetter(c) || c == '"') {
+            throw new InvalidArgumentException(MessageHelper.message(Msg.e_invarg, arg));
+          }
+          final int end = findPatternEnd(arg, i + 1, c);
+          if (end == -1) {
+            throw new InvalidArgumentException(MessageHelper.message(Msg.e_invarg, arg));
+          }
+          pattern = arg.substring(i + 1, end);
+          i = end;
+      }
+    }
+
+    RegExp.regprog_T prog = null;
+    if (pattern != null) {
+      if (pattern.length() == 0) {
+        pattern = VimPlugin.getSearch().getLastSearch();
+        if (pattern == null || pattern.length() == 0) {
+          VimPlugin.showMessage(MessageHelper.message(Msg.e_noprevre));
+          return null;
+        }
+      }
+      prog = RegExpCache.compile(new RegExp(), pattern, 1);
+      if (prog == null) {
+        return null;
+      }
+    }
+
+    return new LineSorter(ignoreCase, base, reverse, unique, prog, useMatch);
+  }
 
-    return VimPlugin.getChange().sortRange(editor, range, lineComparator);
+  private static int findPatternEnd(@NotNull String arg, int start, char delimiter) {
+    for (int i = start; i < arg.length(); i++) {
+      final char c = arg.charAt(i);
+      if (c == '\\') {
+        i++;
+      }
+      else if (c == delimiter) {
+        return i;
+      }
+    }
+    return -1;
   }
 
   @NotNull
@@ -100,29 +193,233 @@ public class SortHandler extends CommandHandler {
     return normalizedRange;
   }
 
-  private static class LineComparator implements Comparator<String> {
-    private final boolean myIgnoreCase;
-    private final boolean myNumber;
-    private final boolean myReverse;
-
-    public LineComparator(boolean ignoreCase, boolean number, boolean reverse) {
+  /**
+   * Sorts the lines of a range.
+   *
+   * The sort key of each line is extracted only once before sorting. Lines without a match of the pattern or without
+   * a number in the numeric modes are kept in their original order before the other lines.
+   */
+  static class LineSorter implements Function<List<String>, List<String>> {
+    public LineSorter(boolean ignoreCase, int base, boolean reverse, boolean unique, @Nullable RegExp.regprog_T prog,
+                      boolean useMatch) {
       myIgnoreCase = ignoreCase;
-      myNumber = number;
+      myBase = base;
       myReverse = reverse;
+      myUnique = unique;
+      myProg = prog;
+      myUseMatch = useMatch;
     }
 
     @Override
-    public int compare(String o1, String o2) {
-      if (myReverse) {
-        final String tmp = o2;
-        o2 = o1;
-        o1 = tmp;
+    public List<String> fun(@NotNull List<String> lines) {
+      final SortLine[] sortLines = new SortLine[lines.size()];
+      final RegExp sp = new RegExp();
+      final RegExp.regmmatch_T regmatch = new RegExp.regmmatch_T();
+      regmatch.regprog = myProg;
+      regmatch.rmm_ic = Options.getInstance().isSet("ignorecase");
+      for (int i = 0; i < sortLines.length; i++) {
+        sortLines[i] = createSortLine(lines.get(i), i, sp, regmatch);
+      }
+
+      sort(sortLines, myExecutor);
+
+      final List<String> res = new ArrayList<String>(sortLines.length);
+      String previous = null;
+      for (int i = 0; i < sortLines.length; i++) {
+        final String line = sortLines[myReverse ? sortLines.length - i - 1 : i].line;
+        if (!myUnique || previous == null ||
+            (myIgnoreCase ? !line.equalsIgnoreCase(previous) : !line.equals(previous))) {
+          res.add(line);
+        }
+        previous = line;
+      }
+      return res;
+    }
+
+    @NotNull
+    private SortLine createSortLine(@NotNull String line, int index, @NotNull RegExp sp,
+                                    @NotNull RegExp.regmmatch_T regmatch) {
+      int start = 0;
+      int end = line.length();
+      if (myProg != null) {
+        if (sp.vim_regexec_multi(regmatch, LineIndex.forText(line, -1), 1, 0, 0) <= 0) {
+          return new SortLine(line, index, false, null, 0);
+        }
+        final int matchStart = Math.min(regmatch.startpos[0].col, end);
+        final int matchEnd = regmatch.endpos[0].lnum == 0 ? Math.min(regmatch.endpos[0].col, end) : end;
+        if (myUseMatch) {
+          start = matchStart;
+          end = matchEnd;
+        }
+        else {
+          start = matchEnd;
+        }
       }
+
+      if (myBase != 0) {
+        final int numberStart = findNumber(line, start, end);
+        if (numberStart == -1) {
+          return new SortLine(line, index, false, null, 0);
+        }
+        return new SortLine(line, index, true, null, parseNumber(line, numberStart, end));
+      }
+
+      String key = line.substring(start, end);
       if (myIgnoreCase) {
-        o1 = o1.toUpperCase();
-        o2 = o2.toUpperCase();
+        key = key.toUpperCase();
+      }
+      return new SortLine(line, index, true, key, 0);
+    }
+
+    private int findNumber(@NotNull String line, int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (Character.digit(line.charAt(i), myBase) != -1) {
+          if (myBase == 16 && line.charAt(i) == '0' && i + 2 < end && Character.toLowerCase(line.charAt(i + 1)) == 'x' &&
+              Character.digit(line.charAt(i + 2), 16) != -1) {
+            return i + 2;
+          }
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private long parseNumber(@NotNull String line, int start, int end) {
+      long value = 0;
+      for (int i = start; i < end; i++) {
+        final int digit = Character.digit(line.charAt(i), myBase);
+        if (digit == -1) {
+          break;
+        }
+        if (value > (Long.MAX_VALUE - digit) / myBase) {
+          value = Long.MAX_VALUE;
+          break;
+        }
+        value = value * myBase + digit;
+      }
+      final boolean negative = myBase == 10 && start > 0 && line.charAt(start - 1) == '-';
+      return negative ? -value : value;
+    }
+
+    /**
+     * Sets the executor for sorting the parts of a large range in parallel. By default the pooled threads of the
+     * application are used and the lines are sorted on one thread if there is no application.
+     */
+    void setExecutor(@Nullable ExecutorService executor) {
+      myExecutor = executor;
+    }
+
+    private static void sort(@NotNull final SortLine[] lines, @Nullable ExecutorService executor) {
+      final Application application = ApplicationManager.getApplication();
+      if (lines.length < PARALLEL_SORT_LINES || (executor == null && application == null)) {
+        Arrays.sort(lines);
+        return;
+      }
+
+      final int chunks = Math.min(Runtime.getRuntime().availableProcessors(), MAX_SORT_THREADS);
+      final int chunkSize = (lines.length + chunks - 1) / chunks;
+      final List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int i = 0; i < lines.length; i += chunkSize) {
+        final int from = i;
+        final int to = Math.min(i + chunkSize, lines.length);
+        final Runnable task = new Runnable() {
+          @Override
+          public void run() {
+            Arrays.sort(lines, from, to);
+          }
+        };
+        futures.add(executor != null ? executor.submit(task) : application.executeOnPooledThread(task));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        }
+        catch (Exception e) {
+          logger.error(e);
+          Arrays.sort(lines);
+          return;
+        }
+      }
+
+      SortLine[] src = lines;
+      SortLine[] dst = new SortLine[lines.length];
+      for (int width = chunkSize; width < lines.length; width *= 2) {
+        for (int from = 0; from < lines.length; from += 2 * width) {
+          merge(src, dst, from, Math.min(from + width, lines.length), Math.min(from + 2 * width, lines.length));
+        }
+        final SortLine[] tmp = src;
+        src = dst;
+        dst = tmp;
+      }
+      if (src != lines) {
+        System.arraycopy(src, 0, lines, 0, lines.length);
+      }
+    }
+
+    private static void merge(@NotNull SortLine[] src, @NotNull SortLine[] dst, int from, int middle, int to) {
+      int i = from;
+      int j = middle;
+      for (int k = from; k < to; k++) {
+        if (j >= to || (i < middle && src[i].compareTo(src[j]) <= 0)) {
+          dst[k] = src[i++];
+        }
+        else {
+          dst[k] = src[j++];
+        }
+      }
+    }
+
+    private final boolean myIgnoreCase;
+    private final int myBase;
+    private final boolean myReverse;
+    private final boolean myUnique;
+    @Nullable private final RegExp.regprog_T myProg;
+    private final boolean myUseMatch;
+    @Nullable private ExecutorService myExecutor;
+  }
+
+  /**
+   * A line together with its precomputed sort key. Lines that are equal by their keys keep their original order.
+   */
+  private static class SortLine implements Comparable<SortLine> {
+    public SortLine(@NotNull String line, int index, boolean hasKey, @Nullable String key, long number) {
+      this.line = line;
+      this.index = index;
+      this.hasKey = hasKey;
+      this.key = key;
+      this.number = number;
+    }
+
+    @Override
+    public int compareTo(@NotNull SortLine other) {
+      int res;
+      if (hasKey != other.hasKey) {
+        res = hasKey ? 1 : -1;
+      }
+      else if (!hasKey) {
+        res = 0;
+      }
+      else if (key != null && other.key != null) {
+        res = key.compareTo(other.key);
       }
-      return myNumber ? StringUtil.naturalCompare(o1, o2) : o1.compareTo(o2);
+      else {
+        res = number < other.number ? -1 : (number > other.number ? 1 : 0);
+      }
+      return res != 0 ? res : index - other.index;
     }
+
+    @NotNull private final String line;
+    private final int index;
+    private final boolean hasKey;
+    @Nullable private final String key;
+    private final long number;
   }
+
+  /**
+   * The number of lines starting from which the lines are sorted in parallel
+   */
+  private static final int PARALLEL_SORT_LINES = 100000;
+  private static final int MAX_SORT_THREADS = 8;
+
+  private static final Logger logger = Logger.getInstance(SortHandler.class.getName());
 }
@@ -48,7 +48,7 @@ public class SourceHandler extends CommandHandler implements VimScriptCommandHan
   }
 
   @NotNull
-  private static String expandUser(@NotNull String path) {
+  static String expandUser(@NotNull String path) {
     if (path.startsWith("~")) {
       final String home = System.getProperty("user.home");
       if (home != null) {
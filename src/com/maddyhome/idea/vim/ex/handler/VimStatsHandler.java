@@ -0,0 +1,97 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2014 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.maddyhome.idea.vim.ex.handler;
+
+import com.intellij.openapi.actionSystem.DataContext;
+import com.intellij.openapi.editor.Editor;
+import com.maddyhome.idea.vim.KeyHandler;
+import com.maddyhome.idea.vim.ex.*;
+import com.maddyhome.idea.vim.ex.vimscript.VimScriptCommandHandler;
+import com.maddyhome.idea.vim.helper.LatencyStats;
+import com.maddyhome.idea.vim.helper.MessageHelper;
+import com.maddyhome.idea.vim.helper.Msg;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Shows the timing stats of the keystrokes and the actions.
+ *
+ * :vimstats on|off turns the stats of the individual steps on or off, :vimstats clear clears them and
+ * :vimstats dump {file} writes them to a JSON file. Without an argument the stats are shown.
+ */
+public class VimStatsHandler extends CommandHandler implements VimScriptCommandHandler {
+  public VimStatsHandler() {
+    super("vimstats", "", RANGE_FORBIDDEN | DONT_REOPEN | ARGUMENT_OPTIONAL);
+  }
+
+  public boolean execute(@NotNull Editor editor, @NotNull DataContext context, @NotNull ExCommand cmd) throws ExException {
+    if (cmd.getArgument().trim().length() == 0) {
+      final StringBuilder builder = new StringBuilder();
+      builder.append("--- Keystrokes ---\n");
+      builder.append(KeyHandler.getKeyLatency()).append('\n');
+      builder.append("--- Steps (").append(LatencyStats.isEnabled() ? "on" : "off").append(") ---\n");
+      builder.append(LatencyStats.format());
+      ExOutputModel.getInstance(editor).output(builder.toString());
+    }
+    else {
+      execute(cmd);
+    }
+    return true;
+  }
+
+  @Override
+  public void execute(@NotNull ExCommand cmd) throws ExException {
+    final String arg = cmd.getArgument().trim();
+    if (arg.equals("on")) {
+      LatencyStats.setEnabled(true);
+    }
+    else if (arg.equals("off")) {
+      LatencyStats.setEnabled(false);
+    }
+    else if (arg.equals("clear")) {
+      LatencyStats.clear();
+      KeyHandler.getKeyLatency().clear();
+    }
+    else if (arg.startsWith("dump ")) {
+      dump(new File(SourceHandler.expandUser(arg.substring("dump ".length()).trim())));
+    }
+    else if (arg.length() > 0) {
+      throw new InvalidArgumentException(MessageHelper.message(Msg.e_invarg, arg));
+    }
+  }
+
+  private static void dump(@NotNull File file) throws ExException {
+    try {
+      final Writer writer = new FileWriter(file);
+      try {
+        writer.write(LatencyStats.toJson());
+      }
+      finally {
+        writer.close();
+      }
+    }
+    catch (IOException e) {
+      throw new ExException(e.getMessage());
+    }
+  }
+
+}
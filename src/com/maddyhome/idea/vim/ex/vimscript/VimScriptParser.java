@@ -18,10 +18,12 @@
 
 package com.maddyhome.idea.vim.ex.vimscript;
 
+import com.maddyhome.idea.vim.VimPlugin;
 import com.maddyhome.idea.vim.ex.CommandHandler;
 import com.maddyhome.idea.vim.ex.CommandParser;
 import com.maddyhome.idea.vim.ex.ExCommand;
 import com.maddyhome.idea.vim.ex.ExException;
+import com.maddyhome.idea.vim.group.KeyGroup;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -29,7 +31,11 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,6 +49,7 @@ public class VimScriptParser {
   private static final Pattern DOUBLE_QUOTED_STRING = Pattern.compile("\"([^\"]*)\"");
   private static final Pattern SINGLE_QUOTED_STRING = Pattern.compile("'([^']*)'");
   private static final Pattern REFERENCE_EXPR = Pattern.compile("([A-Za-z_][A-Za-z_0-9]*)");
+  private static final Map<String, ParsedFile> PARSED_FILES = new ConcurrentHashMap<String, ParsedFile>();
 
   private VimScriptParser() {
   }
@@ -62,17 +69,47 @@ public class VimScriptParser {
   }
 
   public static void executeFile(@NotNull File file) {
+    final List<ExCommand> commands = parseFile(file);
+    if (commands != null) {
+      executeCommands(commands);
+    }
+  }
+
+  public static void executeText(@NotNull String text) {
+    executeCommands(parseText(text));
+  }
+
+  /**
+   * Returns the commands of the file or null if it cannot be read.
+   *
+   * The commands are cached until the modification time or the length of the file change. The parsing doesn't depend
+   * on the state of the editors, so it can be done outside of the event dispatch thread.
+   */
+  @Nullable
+  public static List<ExCommand> parseFile(@NotNull File file) {
+    final String path = file.getAbsolutePath();
+    final long modified = file.lastModified();
+    final long length = file.length();
+    final ParsedFile cached = PARSED_FILES.get(path);
+    if (cached != null && cached.modified == modified && cached.length == length) {
+      return cached.commands;
+    }
     final String data;
     try {
       data = readFile(file);
     }
     catch (IOException ignored) {
-      return;
+      return null;
     }
-    executeText(data);
+    final List<ExCommand> commands = parseText(data);
+    PARSED_FILES.put(path, new ParsedFile(modified, length, commands));
+    return commands;
   }
 
-  public static void executeText(@NotNull String text) {
+  @NotNull
+  public static List<ExCommand> parseText(@NotNull String text) {
+    final List<ExCommand> commands = new ArrayList<ExCommand>();
+    final CommandParser commandParser = CommandParser.getInstance();
     for (String line : EOL_SPLIT_PATTERN.split(text)) {
       // TODO: Build a proper parse tree for a VimL file instead of ignoring potentially nested lines (VIM-669)
       if (line.startsWith(" ") || line.startsWith("\t")) {
@@ -81,17 +118,37 @@ public class VimScriptParser {
       if (line.startsWith(":")) {
         line = line.substring(1);
       }
-      final CommandParser commandParser = CommandParser.getInstance();
       try {
-        final ExCommand command = commandParser.parse(line);
+        commands.add(commandParser.parse(line));
+      }
+      catch (ExException ignored) {
+      }
+    }
+    return Collections.unmodifiableList(commands);
+  }
+
+  /**
+   * Executes the Vim script commands, the key mappings are added as a single batch.
+   */
+  public static void executeCommands(@NotNull List<ExCommand> commands) {
+    final CommandParser commandParser = CommandParser.getInstance();
+    final KeyGroup keyGroup = VimPlugin.getKey();
+    keyGroup.startMappingBatch();
+    try {
+      for (ExCommand command : commands) {
         final CommandHandler commandHandler = commandParser.getCommandHandler(command);
         if (commandHandler instanceof VimScriptCommandHandler) {
           final VimScriptCommandHandler handler = (VimScriptCommandHandler)commandHandler;
-          handler.execute(command);
+          try {
+            handler.execute(command);
+          }
+          catch (ExException ignored) {
+          }
         }
       }
-      catch (ExException ignored) {
-      }
+    }
+    finally {
+      keyGroup.finishMappingBatch();
     }
   }
 
@@ -134,12 +191,29 @@ public class VimScriptParser {
   @NotNull
   private static String readFile(@NotNull File file) throws IOException {
     final BufferedReader reader = new BufferedReader(new FileReader(file));
-    final StringBuilder builder = new StringBuilder();
-    final char[] buffer = new char[BUFSIZE];
-    int n;
-    while ((n = reader.read(buffer)) > 0) {
-      builder.append(buffer, 0, n);
+    try {
+      final StringBuilder builder = new StringBuilder();
+      final char[] buffer = new char[BUFSIZE];
+      int n;
+      while ((n = reader.read(buffer)) > 0) {
+        builder.append(buffer, 0, n);
+      }
+      return builder.toString();
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  private static class ParsedFile {
+    public ParsedFile(long modified, long length, @NotNull List<ExCommand> commands) {
+      this.modified = modified;
+      this.length = length;
+      this.commands = commands;
     }
-    return builder.toString();
+
+    private final long modified;
+    private final long length;
+    @NotNull private final List<ExCommand> commands;
   }
 }
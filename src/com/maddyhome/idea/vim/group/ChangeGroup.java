@@ -17,9 +17,7 @@
  */
 package com.maddyhome.idea.vim.group;
 
-import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
 import com.intellij.openapi.actionSystem.ActionManager;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.DataContext;
@@ -30,7 +28,6 @@ import com.intellij.openapi.command.UndoConfirmationPolicy;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.*;
 import com.intellij.openapi.editor.event.*;
-import com.intellij.openapi.editor.impl.TextRangeInterval;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
@@ -39,6 +36,7 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.codeStyle.CodeStyleSettings;
 import com.intellij.psi.codeStyle.CodeStyleSettingsManager;
+import com.intellij.util.Function;
 import com.maddyhome.idea.vim.EventFacade;
 import com.maddyhome.idea.vim.KeyHandler;
 import com.maddyhome.idea.vim.VimPlugin;
@@ -420,22 +418,27 @@ public class ChangeGroup {
     }
 
     @NotNull
-    private List<AnAction> getAdjustCaretActions(DocumentEvent e) {
+    private List<Object> getAdjustCaretActions(DocumentEvent e) {
       final int delta = e.getOffset() - oldOffset;
       if (oldOffset >= 0 && delta != 0) {
-        final List<AnAction> positionCaretActions = new ArrayList<AnAction>();
-        final String motionName = delta < 0 ? "VimMotionLeft" : "VimMotionRight";
-        final AnAction action = ActionManager.getInstance().getAction(motionName);
-        final int count = Math.abs(delta);
-        for (int i = 0; i < count; i++) {
-          positionCaretActions.add(action);
-        }
-        return positionCaretActions;
+        return Collections.<Object>singletonList(new CaretDelta(delta));
       }
       return Collections.emptyList();
     }
   }
 
+  /**
+   * A caret movement within the line recorded between the changes of an insert. It is stored as a single offset
+   * delta instead of one motion per column.
+   */
+  private static class CaretDelta {
+    public CaretDelta(int delta) {
+      this.delta = delta;
+    }
+
+    private final int delta;
+  }
+
   /**
    * This repeats the previous insert count times
    *
@@ -491,6 +494,14 @@ public class ChangeGroup {
     if (lastStrokes == null) {
       return;
     }
+    // Plain text is inserted count times at once as a single change of the document
+    final String text = getRepeatText(lastStrokes);
+    if (text != null) {
+      if (count > 0 && text.length() > 0) {
+        insertText(editor, editor.getCaretModel().getOffset(), StringUtil.repeat(text, count));
+      }
+      return;
+    }
     for (int i = 0; i < count; i++) {
       // Treat other keys special by performing the appropriate action they represent in insert/replace mode
       for (Object lastStroke : lastStrokes) {
@@ -498,6 +509,13 @@ public class ChangeGroup {
           KeyHandler.executeAction((AnAction)lastStroke, context);
           strokes.add(lastStroke);
         }
+        else if (lastStroke instanceof CaretDelta) {
+          final int offset = VimPlugin.getMotion().moveCaretHorizontal(editor, ((CaretDelta)lastStroke).delta, true);
+          if (offset >= 0) {
+            MotionGroup.moveCaret(editor, offset);
+          }
+          strokes.add(lastStroke);
+        }
         else if (lastStroke instanceof char[]) {
           final char[] chars = (char[])lastStroke;
           insertText(editor, editor.getCaretModel().getOffset(), new String(chars));
@@ -506,6 +524,45 @@ public class ChangeGroup {
     }
   }
 
+  /**
+   * Returns the text of the strokes if all of them are plain text, otherwise null.
+   */
+  @Nullable
+  private static String getRepeatText(@NotNull List<Object> strokes) {
+    final StringBuilder builder = new StringBuilder();
+    for (Object stroke : strokes) {
+      if (!(stroke instanceof char[])) {
+        return null;
+      }
+      builder.append((char[])stroke);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Joins the adjacent text strokes, so the text typed char by char is repeated by a single insert.
+   */
+  @NotNull
+  private static List<Object> joinTextStrokes(@NotNull List<Object> strokes) {
+    final List<Object> res = new ArrayList<Object>(strokes.size());
+    final StringBuilder builder = new StringBuilder();
+    for (Object stroke : strokes) {
+      if (stroke instanceof char[]) {
+        builder.append((char[])stroke);
+        continue;
+      }
+      if (builder.length() > 0) {
+        res.add(builder.toString().toCharArray());
+        builder.setLength(0);
+      }
+      res.add(stroke);
+    }
+    if (builder.length() > 0) {
+      res.add(builder.toString().toCharArray());
+    }
+    return res;
+  }
+
   /**
    * Terminate insert/replace mode after the user presses Escape or Ctrl-C
    *
@@ -530,7 +587,7 @@ public class ChangeGroup {
     }
 
     // Save off current list of keystrokes
-    lastStrokes = new ArrayList<Object>(strokes);
+    lastStrokes = joinTextStrokes(strokes);
 
     // If the insert/replace command was preceded by a count, repeat again N - 1 times
     repeatInsert(editor, context, cnt == 0 ? 0 : cnt - 1, true);
@@ -785,29 +842,54 @@ public class ChangeGroup {
    *                  will be removed. If false, only the newline is removed to join the lines.
    * @return true if able to join the lines, false if not
    */
-  private boolean deleteJoinNLines(@NotNull Editor editor, int startLine, int count, boolean spaces) {
-    // start my moving the cursor to the very end of the first line
-    MotionGroup.moveCaret(editor, VimPlugin.getMotion().moveCaretToLineEnd(editor, startLine, true));
-    for (int i = 1; i < count; i++) {
-      int start = VimPlugin.getMotion().moveCaretToLineEnd(editor);
-      int trailingWhitespaceStart = VimPlugin.getMotion().moveCaretToLineEndSkipLeading(editor);
-      boolean hasTrailingWhitespace = start != trailingWhitespaceStart + 1;
-
-      MotionGroup.moveCaret(editor, start);
-      int offset;
-      if (spaces) {
-        offset = VimPlugin.getMotion().moveCaretToLineStartSkipLeadingOffset(editor, 1);
+  private boolean deleteJoinNLines(@NotNull final Editor editor, final int startLine, int count, boolean spaces) {
+    final int lastLine = Math.min(startLine + count, EditorHelper.getLineCount(editor)) - 1;
+    if (lastLine <= startLine) {
+      return false;
+    }
+
+    // The joined text is built from the current text and replaces everything from the end of the first line to the
+    // text of the last line at once
+    final Document document = editor.getDocument();
+    final CharSequence chars = document.getCharsSequence();
+    final int start = document.getLineEndOffset(startLine);
+    final StringBuilder builder = new StringBuilder();
+    boolean hasTrailingWhitespace = start == document.getLineStartOffset(startLine) ||
+                                    Character.isWhitespace(chars.charAt(start - 1));
+    int caret = start;
+    int end = start;
+    for (int line = startLine + 1; line <= lastLine; line++) {
+      caret = start + builder.length();
+      if (spaces && !hasTrailingWhitespace) {
+        builder.append(' ');
       }
-      else {
-        offset = VimPlugin.getMotion().moveCaretToLineStartOffset(editor);
+      end = spaces ? EditorHelper.getLeadingCharacterOffset(editor, line) : document.getLineStartOffset(line);
+      if (line < lastLine) {
+        builder.append(chars, end, document.getLineEndOffset(line));
       }
-      deleteText(editor, new TextRange(editor.getCaretModel().getOffset(), offset), null);
-      if (spaces && !hasTrailingWhitespace) {
-        insertText(editor, start, " ");
-        MotionGroup.moveCaret(editor, VimPlugin.getMotion().moveCaretHorizontal(editor, -1, false));
+      if (builder.length() > 0) {
+        hasTrailingWhitespace = Character.isWhitespace(builder.charAt(builder.length() - 1));
       }
     }
 
+    // The marks of the joined lines are moved to the first line instead of being removed with the deleted lines
+    final int finalEnd = end;
+    VimPlugin.getMark().runBulkChange(document, new Runnable() {
+      @Override
+      public void run() {
+        replaceText(editor, start, finalEnd, builder.toString());
+      }
+    }, new Function<Integer, Integer>() {
+      @Override
+      public Integer fun(Integer line) {
+        if (line <= startLine) {
+          return line;
+        }
+        return line <= lastLine ? startLine : line - (lastLine - startLine);
+      }
+    });
+    MotionGroup.moveCaret(editor, caret);
+
     return true;
   }
 
@@ -1512,15 +1594,15 @@ public class ChangeGroup {
   }
 
   /**
-   * Sort range of text with a given comparator
+   * Sort range of text with a given sorter
    *
-   * @param editor          The editor to replace text in
-   * @param range           The range to sort
-   * @param lineComparator  The comparator to use to sort
+   * @param editor The editor to replace text in
+   * @param range  The range to sort
+   * @param sorter The function returning the sorted lines
    * @return true if able to sort the text, false if not
    */
   public boolean sortRange(@NotNull Editor editor, @NotNull LineRange range,
-                           @NotNull Comparator<String> lineComparator) {
+                           @NotNull Function<List<String>, List<String>> sorter) {
     final int startLine = range.getStartLine();
     final int endLine = range.getEndLine();
     final int count = endLine - startLine + 1;
@@ -1531,27 +1613,32 @@ public class ChangeGroup {
     final int startOffset = editor.getDocument().getLineStartOffset(startLine);
     final int endOffset = editor.getDocument().getLineEndOffset(endLine);
 
-    return sortTextRange(editor, startOffset, endOffset, lineComparator);
+    return sortTextRange(editor, startOffset, endOffset, sorter);
   }
 
   /**
-   * Sorts a text range with a comparator. Returns true if a replace was performed, false otherwise.
+   * Sorts a text range with a sorter. Returns true if a replace was performed, false otherwise.
    *
-   * @param editor          The editor to replace text in
-   * @param start           The starting position for the sort
-   * @param end             The ending position for the sort
-   * @param lineComparator  The comparator to use to sort
+   * @param editor The editor to replace text in
+   * @param start  The starting position for the sort
+   * @param end    The ending position for the sort
+   * @param sorter The function returning the sorted lines
    * @return true if able to sort the text, false if not
    */
   private boolean sortTextRange(@NotNull Editor editor, int start, int end,
-                                @NotNull Comparator<String> lineComparator) {
-    final String selectedText = editor.getDocument().getText(new TextRangeInterval(start, end));
-    final List<String> lines = Lists.newArrayList(Splitter.on("\n").split(selectedText));
-    if (lines.size() < 1) {
-      return false;
+                                @NotNull Function<List<String>, List<String>> sorter) {
+    final CharSequence chars = editor.getDocument().getCharsSequence();
+    final List<String> lines = new ArrayList<String>();
+    int lineStart = start;
+    for (int i = start; i < end; i++) {
+      if (chars.charAt(i) == '\n') {
+        lines.add(chars.subSequence(lineStart, i).toString());
+        lineStart = i + 1;
+      }
     }
-    Collections.sort(lines, lineComparator);
-    replaceText(editor, start, end, StringUtil.join(lines, "\n"));
+    lines.add(chars.subSequence(lineStart, end).toString());
+
+    replaceText(editor, start, end, StringUtil.join(sorter.fun(lines), "\n"));
     return true;
   }
 
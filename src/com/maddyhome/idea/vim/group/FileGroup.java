@@ -31,24 +31,29 @@ import com.intellij.openapi.fileEditor.impl.EditorTabbedContainer;
 import com.intellij.openapi.fileEditor.impl.EditorWindow;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.codeStyle.MinusculeMatcher;
+import com.intellij.psi.codeStyle.NameUtil;
+import com.intellij.psi.search.FilenameIndex;
+import com.intellij.psi.search.GlobalSearchScope;
 import com.maddyhome.idea.vim.KeyHandler;
 import com.maddyhome.idea.vim.VimPlugin;
 import com.maddyhome.idea.vim.command.CommandState;
 import com.maddyhome.idea.vim.common.TextRange;
 import com.maddyhome.idea.vim.helper.EditorData;
 import com.maddyhome.idea.vim.helper.EditorHelper;
-import com.maddyhome.idea.vim.helper.SearchHelper;
 import com.maddyhome.idea.vim.helper.StringHelper;
+import com.maddyhome.idea.vim.helper.WordCountIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.io.File;
-import java.util.HashMap;
+import java.util.*;
 
 /**
  *
@@ -58,12 +63,31 @@ public class FileGroup {
   }
 
   public boolean openFile(@NotNull String filename, @NotNull DataContext context) {
+    return openFile(filename, context, false);
+  }
+
+  /**
+   * Opens the file with the given name
+   *
+   * @param filename The name or the relative path of the file
+   * @param context  The data context
+   * @param fuzzy    Whether to open the only project file matching the name like in Goto File if there is no file with
+   *                 this exact name
+   * @return True if the file was found, false if not
+   */
+  public boolean openFile(@NotNull String filename, @NotNull DataContext context, boolean fuzzy) {
     if (logger.isDebugEnabled()) {
       logger.debug("openFile(" + filename + ")");
     }
     Project proj = PlatformDataKeys.PROJECT.getData(context); // API change - don't merge
 
     VirtualFile found = findFile(filename, proj);
+    if (found == null && fuzzy && proj != null) {
+      final List<VirtualFile> matches = findFiles(proj, filename, 2);
+      if (matches.size() == 1) {
+        found = matches.get(0);
+      }
+    }
 
     if (found != null) {
       if (logger.isDebugEnabled()) {
@@ -109,16 +133,29 @@ public class FileGroup {
       }
       ProjectRootManager prm = ProjectRootManager.getInstance(proj);
       VirtualFile[] roots = prm.getContentRoots();
-      for (int i = 0; i < roots.length; i++) {
-        if (logger.isDebugEnabled()) {
-          logger.debug("root[" + i + "] = " + roots[i].getPath());
-        }
-        found = findFile(roots[i], filename);
+      for (VirtualFile root : roots) {
+        found = root.findFileByRelativePath(filename);
         if (found != null) {
           break;
         }
       }
 
+      if (found == null && !DumbService.isDumb(proj)) {
+        found = findIndexedFile(proj, filename);
+      }
+      else if (found == null) {
+        // The file name index is being updated, search the content roots
+        for (int i = 0; i < roots.length; i++) {
+          if (logger.isDebugEnabled()) {
+            logger.debug("root[" + i + "] = " + roots[i].getPath());
+          }
+          found = findFile(roots[i], filename);
+          if (found != null) {
+            break;
+          }
+        }
+      }
+
       if (found == null) {
         found = LocalFileSystem.getInstance().findFileByIoFile(new File(filename));
       }
@@ -127,6 +164,90 @@ public class FileGroup {
     return found;
   }
 
+  /**
+   * Finds the project files with names matching the pattern like in Goto File. The pattern may be a prefix of the name
+   * or its camel hump abbreviation and the case is ignored.
+   *
+   * @param proj    The project
+   * @param pattern The pattern of the file name
+   * @param limit   The maximum number of files to return
+   * @return The matching files, the best matches and the shortest names first
+   */
+  @NotNull
+  public List<VirtualFile> findFiles(@NotNull Project proj, @NotNull String pattern, int limit) {
+    final List<VirtualFile> res = new ArrayList<VirtualFile>();
+    if (pattern.length() == 0 || DumbService.isDumb(proj)) {
+      return res;
+    }
+
+    final MinusculeMatcher matcher = NameUtil.buildMatcher(pattern, NameUtil.MatchingCaseSensitivity.NONE);
+    final List<String> names = new ArrayList<String>();
+    for (String name : FilenameIndex.getAllFilenames(proj)) {
+      if (matcher.matches(name)) {
+        names.add(name);
+      }
+    }
+    Collections.sort(names, new Comparator<String>() {
+      @Override
+      public int compare(@NotNull String o1, @NotNull String o2) {
+        final int degree = matcher.matchingDegree(o2) - matcher.matchingDegree(o1);
+        if (degree != 0) {
+          return degree;
+        }
+        return o1.length() != o2.length() ? o1.length() - o2.length() : o1.compareTo(o2);
+      }
+    });
+
+    final GlobalSearchScope scope = GlobalSearchScope.projectScope(proj);
+    for (String name : names) {
+      for (VirtualFile file : sortByPath(FilenameIndex.getVirtualFilesByName(proj, name, scope))) {
+        if (res.size() >= limit) {
+          return res;
+        }
+        res.add(file);
+      }
+    }
+
+    return res;
+  }
+
+  /**
+   * Finds a project file by its name or by a relative path ending with its name using the file name index.
+   * The file with the shortest path is preferred.
+   */
+  @Nullable
+  private VirtualFile findIndexedFile(@NotNull Project proj, @NotNull String filename) {
+    final String path = filename.replace(File.separatorChar, '/');
+    final String name = path.substring(path.lastIndexOf('/') + 1);
+    if (name.length() == 0) {
+      return null;
+    }
+
+    final Collection<VirtualFile> files =
+      FilenameIndex.getVirtualFilesByName(proj, name, GlobalSearchScope.projectScope(proj));
+    for (VirtualFile file : sortByPath(files)) {
+      if (path.equals(name) || file.getPath().endsWith("/" + path)) {
+        return file;
+      }
+    }
+
+    return null;
+  }
+
+  @NotNull
+  private static List<VirtualFile> sortByPath(@NotNull Collection<VirtualFile> files) {
+    final List<VirtualFile> res = new ArrayList<VirtualFile>(files);
+    Collections.sort(res, new Comparator<VirtualFile>() {
+      @Override
+      public int compare(@NotNull VirtualFile o1, @NotNull VirtualFile o2) {
+        final String p1 = o1.getPath();
+        final String p2 = o2.getPath();
+        return p1.length() != p2.length() ? p1.length() - p2.length() : p1.compareTo(p2);
+      }
+    });
+    return res;
+  }
+
   @Nullable
   private VirtualFile findFile(@NotNull VirtualFile root, @NotNull String filename) {
     VirtualFile res = root.findFileByRelativePath(filename);
@@ -343,11 +464,12 @@ public class FileGroup {
 
       msg.append("; Line ").append(lline + 1).append(" of ").append(total);
 
-      SearchHelper.CountPosition cp = SearchHelper.countWords(editor);
+      int offset = editor.getCaretModel().getOffset();
+      WordCountIndex words = WordCountIndex.getInstance(doc);
+      int word = words.countBefore(doc.getCharsSequence(), offset + 1);
 
-      msg.append("; Word ").append(cp.getPosition()).append(" of ").append(cp.getCount());
+      msg.append("; Word ").append(word).append(" of ").append(words.getCount());
 
-      int offset = editor.getCaretModel().getOffset();
       int size = EditorHelper.getFileSize(editor);
 
       msg.append("; Character ").append(offset + 1).append(" of ").append(size);
@@ -359,8 +481,9 @@ public class FileGroup {
       vr.normalize();
 
       int lines;
-      SearchHelper.CountPosition cp = SearchHelper.countWords(editor);
-      int words = cp.getCount();
+      CharSequence text = doc.getCharsSequence();
+      WordCountIndex index = WordCountIndex.getInstance(doc);
+      int words = index.getCount();
       int word = 0;
       if (vr.isMultiple()) {
         lines = vr.size();
@@ -369,8 +492,7 @@ public class FileGroup {
         msg.append(cols).append(" Cols; ");
 
         for (int i = 0; i < vr.size(); i++) {
-          cp = SearchHelper.countWords(editor, vr.getStartOffsets()[i], vr.getEndOffsets()[i] - 1);
-          word += cp.getCount();
+          word += index.count(text, vr.getStartOffsets()[i], vr.getEndOffsets()[i]);
         }
       }
       else {
@@ -379,8 +501,7 @@ public class FileGroup {
 
         lines = elp.line - slp.line + 1;
 
-        cp = SearchHelper.countWords(editor, vr.getStartOffset(), vr.getEndOffset() - 1);
-        word = cp.getCount();
+        word = index.count(text, vr.getStartOffset(), vr.getEndOffset());
       }
 
       int total = EditorHelper.getLineCount(editor);
@@ -64,6 +64,9 @@ public class KeyGroup {
   @NotNull private final Set<KeyStroke> requiredShortcutKeys = new HashSet<KeyStroke>();
   @NotNull private final HashMap<MappingMode, RootNode> keyRoots = new HashMap<MappingMode, RootNode>();
   @NotNull private final Map<MappingMode, KeyMapping> keyMappings = new HashMap<MappingMode, KeyMapping>();
+  @NotNull private final List<ActionBinding> bindings = new ArrayList<ActionBinding>();
+  private int mappingBatchLevel = 0;
+  private boolean shortcutKeysChanged = false;
 
   public void registerRequiredShortcutKeys(@NotNull Editor editor) {
     final Set<KeyStroke> requiredKeys = VimPlugin.getKey().getRequiredShortcutKeys();
@@ -105,13 +108,38 @@ public class KeyGroup {
       }
     }
     if (requiredShortcutKeys.size() != oldSize) {
-      for (Editor editor : EditorFactory.getInstance().getAllEditors()) {
-        unregisterShortcutKeys(editor);
-        registerRequiredShortcutKeys(editor);
+      if (mappingBatchLevel > 0) {
+        shortcutKeysChanged = true;
+      }
+      else {
+        updateShortcutKeys();
       }
     }
   }
 
+  /**
+   * Starts adding a batch of key mappings. The shortcut keys of the editors are updated once when the batch is
+   * finished instead of after each mapping that needs new shortcut keys. Batches may be nested.
+   */
+  public void startMappingBatch() {
+    mappingBatchLevel++;
+  }
+
+  public void finishMappingBatch() {
+    mappingBatchLevel--;
+    if (mappingBatchLevel == 0 && shortcutKeysChanged) {
+      shortcutKeysChanged = false;
+      updateShortcutKeys();
+    }
+  }
+
+  private void updateShortcutKeys() {
+    for (Editor editor : EditorFactory.getInstance().getAllEditors()) {
+      unregisterShortcutKeys(editor);
+      registerRequiredShortcutKeys(editor);
+    }
+  }
+
   public void saveData(@NotNull Element element) {
     final Element conflictsElement = new Element(SHORTCUT_CONFLICTS_ELEMENT);
     for (Map.Entry<KeyStroke, ShortcutOwner> entry : shortcutConflicts.entrySet()) {
@@ -212,7 +240,8 @@ public class KeyGroup {
   }
 
   /**
-   * Returns the root of the key mapping for the given mapping mode
+   * Returns the root of the key mapping for the given mapping mode. The tree of a mode is built from the registered
+   * actions when it is first requested.
    *
    * @param mappingMode The mapping mode
    * @return The key mapping tree root
@@ -223,6 +252,11 @@ public class KeyGroup {
     if (res == null) {
       res = new RootNode();
       keyRoots.put(mappingMode, res);
+      for (ActionBinding binding : bindings) {
+        if (binding.modes.contains(mappingMode)) {
+          addBinding(res, binding);
+        }
+      }
     }
 
     return res;
@@ -328,15 +362,26 @@ public class KeyGroup {
   @Deprecated
   private void registerAction(@NotNull Set<MappingMode> mappingModes, @NotNull String actName, @NotNull Command.Type cmdType, int cmdFlags, @NotNull KeyStroke[] keys,
                               @NotNull Argument.Type argType) {
+    final ActionBinding binding = new ActionBinding(mappingModes, actName, cmdType, cmdFlags, keys, argType);
+    bindings.add(binding);
+    // The trees that have already been built are updated right away, the others will get the binding when built
     for (MappingMode mappingMode : mappingModes) {
-      Node node = getKeyRoot(mappingMode);
-      final int len = keys.length;
-      // Add a child for each keystroke in the shortcut for this action
-      for (int i = 0; i < len; i++) {
-        if (node instanceof ParentNode) {
-          final ParentNode base = (ParentNode)node;
-          node = addNode(base, actName, cmdType, cmdFlags, keys[i], argType, i == len - 1);
-        }
+      final RootNode root = keyRoots.get(mappingMode);
+      if (root != null) {
+        addBinding(root, binding);
+      }
+    }
+  }
+
+  private void addBinding(@NotNull RootNode root, @NotNull ActionBinding binding) {
+    Node node = root;
+    final int len = binding.keys.length;
+    // Add a child for each keystroke in the shortcut for this action
+    for (int i = 0; i < len; i++) {
+      if (node instanceof ParentNode) {
+        final ParentNode base = (ParentNode)node;
+        node = addNode(base, binding.actName, binding.cmdType, binding.cmdFlags, binding.keys[i], binding.argType,
+                       i == len - 1);
       }
     }
   }
@@ -344,17 +389,12 @@ public class KeyGroup {
   @Nullable
   private Node addNode(@NotNull ParentNode base, @NotNull String actName, @NotNull Command.Type cmdType, int cmdFlags, @NotNull KeyStroke key,
                        @NotNull Argument.Type argType, boolean last) {
-    // Lets get the actual action for the supplied action name
-    ActionManager aMgr = ActionManager.getInstance();
-    AnAction action = aMgr.getAction(actName);
-    assert action != null;
-
     Node node = base.getChild(key);
     // Is this the first time we have seen this character at this point in the tree?
     if (node == null) {
       // If this is the last keystroke in the shortcut, and there is no argument, add a command node
       if (last && argType == Argument.Type.NONE) {
-        node = new CommandNode(key, actName, action, cmdType, cmdFlags);
+        node = new CommandNode(key, actName, cmdType, cmdFlags);
       }
       // If this are more keystrokes in the shortcut or there is an argument, add a branch node
       else {
@@ -366,7 +406,7 @@ public class KeyGroup {
 
     // If this is the last keystroke in the shortcut and we have an argument, add an argument node
     if (last && node instanceof BranchNode && argType != Argument.Type.NONE) {
-      ArgumentNode arg = new ArgumentNode(actName, action, cmdType, argType, cmdFlags);
+      ArgumentNode arg = new ArgumentNode(actName, cmdType, argType, cmdFlags);
       ((BranchNode)node).addChild(arg, BranchNode.ARGUMENT);
     }
 
@@ -477,4 +517,26 @@ public class KeyGroup {
     }
     return results;
   }
+
+  /**
+   * A registered shortcut of an action, the nodes for it are added to the key tree of a mode when the tree is built
+   */
+  private static class ActionBinding {
+    public ActionBinding(@NotNull Set<MappingMode> modes, @NotNull String actName, @NotNull Command.Type cmdType,
+                         int cmdFlags, @NotNull KeyStroke[] keys, @NotNull Argument.Type argType) {
+      this.modes = EnumSet.copyOf(modes);
+      this.actName = actName;
+      this.cmdType = cmdType;
+      this.cmdFlags = cmdFlags;
+      this.keys = keys;
+      this.argType = argType;
+    }
+
+    @NotNull private final Set<MappingMode> modes;
+    @NotNull private final String actName;
+    @NotNull private final Command.Type cmdType;
+    private final int cmdFlags;
+    @NotNull private final KeyStroke[] keys;
+    @NotNull private final Argument.Type argType;
+  }
 }
@@ -61,6 +61,7 @@ public class MacroGroup {
     }
 
     List<KeyStroke> keys = register.getKeys();
+    playbackDepth++;
     playbackKeys(editor, context, project, keys, 0, 0, count);
 
     lastRegister = reg;
@@ -99,6 +100,9 @@ public class MacroGroup {
     }
     if (pos >= keys.size() || cnt >= total) {
       logger.debug("done");
+      if (playbackDepth > 0) {
+        playbackDepth--;
+      }
 
       return;
     }
@@ -134,6 +138,13 @@ public class MacroGroup {
     });
   }
 
+  /**
+   * Returns true while the keystrokes of a register are being played back.
+   */
+  public boolean isPlayingBack() {
+    return playbackDepth > 0;
+  }
+
   public void postKey(@NotNull KeyStroke stroke, @NotNull Editor editor) {
     final Component component = SwingUtilities.getAncestorOfClass(Window.class, editor.getComponent());
     final KeyEvent event = createKeyEvent(stroke, component);
@@ -155,5 +166,6 @@ public class MacroGroup {
   }
 
   private char lastRegister = 0;
+  private int playbackDepth = 0;
   private static final Logger logger = Logger.getInstance(MacroGroup.class.getName());
 }
@@ -22,7 +22,6 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.editor.LogicalPosition;
 import com.intellij.openapi.editor.event.DocumentAdapter;
 import com.intellij.openapi.editor.event.DocumentEvent;
@@ -31,8 +30,10 @@ import com.intellij.openapi.editor.event.EditorFactoryEvent;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Function;
 import com.maddyhome.idea.vim.EventFacade;
 import com.maddyhome.idea.vim.VimPlugin;
+import com.maddyhome.idea.vim.common.FileLocation;
 import com.maddyhome.idea.vim.common.Jump;
 import com.maddyhome.idea.vim.common.Mark;
 import com.maddyhome.idea.vim.common.TextRange;
@@ -89,6 +90,7 @@ public class MarkGroup {
 
     // Make sure this is a valid mark
     if (VALID_GET_MARKS.indexOf(ch) < 0) return null;
+    flushLocations();
 
     VirtualFile vf = EditorData.getVirtualFile(editor);
     if ("{}".indexOf(ch) >= 0 && vf != null) {
@@ -134,6 +136,7 @@ public class MarkGroup {
    */
   @Nullable
   public Jump getJump(int count) {
+    flushLocations();
     int index = jumps.size() - 1 - (jumpSpot - count);
     if (index < 0 || index >= jumps.size()) {
       return null;
@@ -158,6 +161,7 @@ public class MarkGroup {
     if (fmarks == null) {
       return null;
     }
+    flushLocations();
     Mark mark = (Mark)fmarks.get(new Character(ch));
     if (mark != null && mark.isClear()) {
       fmarks.remove(new Character(ch));
@@ -251,15 +255,17 @@ public class MarkGroup {
     Jump jump = new Jump(lp.line, lp.column, vf.getPath());
     final String filename = jump.getFilename();
 
+    flushLocations();
     for (int i = 0; i < jumps.size(); i++) {
       Jump j = jumps.get(i);
       if (filename != null && filename.equals(j.getFilename()) && j.getLogicalLine() == jump.getLogicalLine()) {
-        jumps.remove(i);
+        removeLocation(jumps.remove(i));
         break;
       }
     }
 
     jumps.add(jump);
+    addLocation(jump);
 
     if (reset) {
       jumpSpot = -1;
@@ -269,7 +275,7 @@ public class MarkGroup {
     }
 
     if (jumps.size() > SAVE_JUMP_COUNT) {
-      jumps.remove(0);
+      removeLocation(jumps.remove(0));
     }
   }
 
@@ -288,6 +294,7 @@ public class MarkGroup {
   @NotNull
   public List<Mark> getMarks(@NotNull Editor editor) {
     HashSet<Mark> res = new HashSet<Mark>();
+    flushLocations();
 
     final FileMarks<Character, Mark> marks = getFileMarks(editor.getDocument());
     if (marks != null) {
@@ -304,6 +311,7 @@ public class MarkGroup {
 
   @NotNull
   public List<Jump> getJumps() {
+    flushLocations();
     return jumps;
   }
 
@@ -328,27 +336,56 @@ public class MarkGroup {
     return getFileMarks(vf.getPath());
   }
 
+  /**
+   * Gets the marks and jumps of the file of the document
+   *
+   * @param doc The document to get the locations for
+   * @return The locations or null if there are none
+   */
   @Nullable
-  private HashMap<Character, Mark> getAllFileMarks(@NotNull final Document doc) {
-    VirtualFile vf = FileDocumentManager.getInstance().getFile(doc);
+  private FileLocations getLocations(@NotNull Document doc) {
+    if (locations.isEmpty()) {
+      return null;
+    }
+    final VirtualFile vf = FileDocumentManager.getInstance().getFile(doc);
     if (vf == null) {
       return null;
     }
+    final FileLocations res = locations.get(vf.getPath());
+    return res != null && res.size() > 0 ? res : null;
+  }
 
-    HashMap<Character, Mark> res = new HashMap<Character, Mark>();
-    FileMarks<Character, Mark> fileMarks = getFileMarks(doc);
-    if (fileMarks != null) {
-      res.putAll(fileMarks);
+  @NotNull
+  private FileLocations getLocations(@NotNull String filename) {
+    FileLocations res = locations.get(filename);
+    if (res == null) {
+      res = new FileLocations();
+      locations.put(filename, res);
     }
+    return res;
+  }
 
-    for (Character ch : globalMarks.keySet()) {
-      Mark mark = globalMarks.get(ch);
-      if (vf.getPath().equals(mark.getFilename())) {
-        res.put(ch, mark);
-      }
+  private void addLocation(@NotNull FileLocation location) {
+    final String filename = location.getFilename();
+    if (filename != null) {
+      getLocations(filename).add(location);
+    }
+  }
+
+  private void removeLocation(@NotNull FileLocation location) {
+    final String filename = location.getFilename();
+    if (filename != null) {
+      getLocations(filename).remove(location);
     }
+  }
 
-    return res;
+  /**
+   * Writes the lines of the marks and jumps changed by the document updates back to them
+   */
+  private void flushLocations() {
+    for (FileLocations fileLocations : locations.values()) {
+      fileLocations.flush();
+    }
   }
 
   /**
@@ -361,7 +398,7 @@ public class MarkGroup {
   private FileMarks<Character, Mark> getFileMarks(String filename) {
     FileMarks<Character, Mark> marks = fileMarks.get(filename);
     if (marks == null) {
-      marks = new FileMarks<Character, Mark>();
+      marks = new FileMarks<Character, Mark>(getLocations(filename));
       fileMarks.put(filename, marks);
     }
 
@@ -369,6 +406,7 @@ public class MarkGroup {
   }
 
   public void saveData(@NotNull Element element) {
+    flushLocations();
     Element marksElem = new Element("globalmarks");
     for (Mark mark : globalMarks.values()) {
       if (!mark.isClear()) {
@@ -498,6 +536,9 @@ public class MarkGroup {
       logger.debug("fileMarks=" + fileMarks);
     }
 
+    for (Jump jump : jumps) {
+      removeLocation(jump);
+    }
     jumps.clear();
     Element jumpsElem = element.getChild("jumps");
     if (jumpsElem != null) {
@@ -509,6 +550,7 @@ public class MarkGroup {
                              jumpElem.getAttributeValue("filename"));
 
         jumps.add(jump);
+        addLocation(jump);
       }
     }
 
@@ -518,87 +560,33 @@ public class MarkGroup {
   }
 
   /**
-   * This updates all the marks for a file whenever text is deleted from the file. If the line that contains a mark
-   * is completely deleted then the mark is deleted too. If the deleted text is before the marked line, the mark is
-   * moved up by the number of deleted lines.
+   * Runs a change that replaces many parts of the document at once without updating the marks on each document event
+   * and then moves the marks and jumps of the document to the lines given by the line mapping.
    *
-   * @param editor      The modified editor
-   * @param marks       The editor's marks to update
-   * @param delStartOff The offset within the editor where the deletion occurred
-   * @param delLength   The length of the deleted text
+   * @param doc         The document to change
+   * @param change      The change of the document
+   * @param lineMapping Maps the line of a mark before the change to its line after the change
    */
-  public static void updateMarkFromDelete(@Nullable Editor editor, @Nullable HashMap<Character, Mark> marks, int delStartOff, int delLength) {
-    // Skip all this work if there are no marks
-    if (marks != null && marks.size() > 0 && editor != null) {
-      // Calculate the logical position of the start and end of the deleted text
-      int delEndOff = delStartOff + delLength;
-      LogicalPosition delStart = editor.offsetToLogicalPosition(delStartOff);
-      LogicalPosition delEnd = editor.offsetToLogicalPosition(delEndOff);
-      if (logger.isDebugEnabled()) logger.debug("mark delete. delStart = " + delStart + ", delEnd = " + delEnd);
-
-      // Now analyze each mark to determine if it needs to be updated or removed
-      for (Character ch : marks.keySet()) {
-        Mark mark = marks.get(ch);
-
-        if (logger.isDebugEnabled()) logger.debug("mark = " + mark);
-        // If the end of the deleted text is prior to the marked line, simply shift the mark up by the
-        // proper number of lines.
-        if (delEnd.line < mark.getLogicalLine()) {
-          int lines = delEnd.line - delStart.line;
-          if (logger.isDebugEnabled()) logger.debug("Shifting mark by " + lines + " lines");
-          mark.setLogicalLine(mark.getLogicalLine() - lines);
-        }
-        // If the deleted text begins before the mark and ends after the mark then it may be shifted or deleted
-        else if (delStart.line <= mark.getLogicalLine() && delEnd.line >= mark.getLogicalLine()) {
-          int markLineStartOff = EditorHelper.getLineStartOffset(editor, mark.getLogicalLine());
-          int markLineEndOff = EditorHelper.getLineEndOffset(editor, mark.getLogicalLine(), true);
-          // If the marked line is completely within the deleted text, remove the mark
-          if (delStartOff <= markLineStartOff && delEndOff >= markLineEndOff) {
-            VimPlugin.getMark().removeMark(ch, mark);
-            logger.debug("Removed mark");
-          }
-          // The deletion only covers part of the marked line so shift the mark only if the deletion begins
-          // on a line prior to the marked line (which means the deletion must end on the marked line).
-          else if (delStart.line < mark.getLogicalLine()) {
-            // shift mark
-            mark.setLogicalLine(delStart.line);
-            if (logger.isDebugEnabled()) logger.debug("Shifting mark to line " + delStart.line);
-          }
-        }
-      }
+  public void runBulkChange(@NotNull Document doc, @NotNull Runnable change,
+                            @NotNull Function<Integer, Integer> lineMapping) {
+    final FileLocations fileLocations = getLocations(doc);
+    bulkChanges++;
+    try {
+      change.run();
+    }
+    finally {
+      bulkChanges--;
+    }
+    if (fileLocations != null) {
+      fileLocations.mapLines(lineMapping);
     }
   }
 
-  /**
-   * This updates all the marks for a file whenever text is inserted into the file. If the line that contains a mark
-   * that is after the start of the insertion point, shift the mark by the number of new lines added.
-   *
-   * @param editor      The editor that was updated
-   * @param marks       The editor's marks
-   * @param insStartOff The insertion point
-   * @param insLength   The length of the insertion
-   */
-  public static void updateMarkFromInsert(@Nullable Editor editor, @Nullable HashMap<Character, Mark> marks, int insStartOff, int insLength) {
-    if (marks != null && marks.size() > 0 && editor != null) {
-      int insEndOff = insStartOff + insLength;
-      LogicalPosition insStart = editor.offsetToLogicalPosition(insStartOff);
-      LogicalPosition insEnd = editor.offsetToLogicalPosition(insEndOff);
-      if (logger.isDebugEnabled()) logger.debug("mark insert. insStart = " + insStart + ", insEnd = " + insEnd);
-      int lines = insEnd.line - insStart.line;
-      if (lines == 0) return;
-
-      for (Mark mark : marks.values()) {
-        if (logger.isDebugEnabled()) logger.debug("mark = " + mark);
-        // Shift the mark if the insertion began on a line prior to the marked line.
-        if (insStart.line < mark.getLogicalLine()) {
-          mark.setLogicalLine(mark.getLogicalLine() + lines);
-          if (logger.isDebugEnabled()) logger.debug("Shifting mark by " + lines + " lines");
-        }
-      }
+  private static class FileMarks<K, V extends FileLocation> extends HashMap<K, V> {
+    public FileMarks(@NotNull FileLocations locations) {
+      this.locations = locations;
     }
-  }
 
-  private static class FileMarks<K, V> extends HashMap<K, V> {
     public Date getTimestamp() {
       return timestamp;
     }
@@ -609,10 +597,196 @@ public class MarkGroup {
 
     public V put(K key, V value) {
       timestamp = new Date();
-      return super.put(key, value);
+      final V old = super.put(key, value);
+      if (old != value) {
+        if (old != null) {
+          locations.remove(old);
+        }
+        locations.add(value);
+      }
+      return old;
     }
 
     private Date timestamp = new Date();
+    @NotNull private final FileLocations locations;
+  }
+
+  /**
+   * The marks and jumps of a file ordered by line.
+   *
+   * A change that inserts or deletes lines moves all the locations after it by the same number of lines. The shifts
+   * are kept in a Fenwick tree indexed by the position in the list, so they are applied in O(log n) and the lines of
+   * the locations themselves are only updated by {@link #flush()} before they are read. Locations that have been
+   * cleared are removed from the list at that time too.
+   */
+  private static class FileLocations {
+    public int size() {
+      return size;
+    }
+
+    public void add(@NotNull FileLocation location) {
+      flush();
+      final int line = location.getLogicalLine();
+      if (size == entries.length) {
+        entries = Arrays.copyOf(entries, size * 2);
+        lines = Arrays.copyOf(lines, size * 2);
+        tree = new int[size * 2 + 1];
+      }
+      int i = size;
+      while (i > 0 && lines[i - 1] > line) {
+        i--;
+      }
+      System.arraycopy(entries, i, entries, i + 1, size - i);
+      System.arraycopy(lines, i, lines, i + 1, size - i);
+      entries[i] = location;
+      lines[i] = line;
+      size++;
+    }
+
+    public void remove(@NotNull FileLocation location) {
+      flush();
+      for (int i = 0; i < size; i++) {
+        if (entries[i] == location) {
+          System.arraycopy(entries, i + 1, entries, i, size - i - 1);
+          System.arraycopy(lines, i + 1, lines, i, size - i - 1);
+          size--;
+          entries[size] = null;
+          return;
+        }
+      }
+    }
+
+    /**
+     * Sets the lines of the locations moved by the changes since the last flush and drops the cleared locations.
+     */
+    public void flush() {
+      if (!shifted) {
+        return;
+      }
+      int j = 0;
+      for (int i = 0; i < size; i++) {
+        final FileLocation location = entries[i];
+        if (location.isClear()) {
+          continue;
+        }
+        final int line = getLine(i);
+        location.setLogicalLine(line);
+        entries[j] = location;
+        lines[j] = line;
+        j++;
+      }
+      Arrays.fill(entries, j, size, null);
+      Arrays.fill(tree, 0);
+      size = j;
+      shifted = false;
+    }
+
+    /**
+     * Updates the locations before text is deleted from the document. A mark is removed if its whole line is deleted,
+     * the other locations within the deleted lines are moved to the line where the deletion starts. The locations
+     * after the deleted text are moved up by the number of deleted lines.
+     */
+    public void delete(@NotNull Document doc, int startOff, int endOff) {
+      final int startLine = doc.getLineNumber(startOff);
+      final int endLine = doc.getLineNumber(endOff);
+      final int first = findFirstAfter(startLine - 1);
+      final int last = findFirstAfter(endLine);
+      for (int i = first; i < last; i++) {
+        final FileLocation location = entries[i];
+        final int line = getLine(i);
+        if (location instanceof Mark && !location.isClear() && line < doc.getLineCount() &&
+            startOff <= doc.getLineStartOffset(line) && endOff >= doc.getLineEndOffset(line)) {
+          VimPlugin.getMark().removeMark(((Mark)location).getKey(), (Mark)location);
+          if (logger.isDebugEnabled()) logger.debug("Removed mark " + location);
+        }
+        if (line > startLine) {
+          setLine(i, startLine);
+        }
+      }
+      shift(last, startLine - endLine);
+    }
+
+    /**
+     * Moves the locations after the line where text was inserted down by the number of inserted lines.
+     */
+    public void insert(@NotNull Document doc, int offset, @NotNull CharSequence text) {
+      final int count = StringUtil.countNewLines(text);
+      if (count > 0) {
+        shift(findFirstAfter(doc.getLineNumber(offset)), count);
+      }
+    }
+
+    /**
+     * Moves the locations to the lines given by a non-decreasing line mapping and drops the cleared locations, since
+     * their lines aren't mapped and would break the order of the list.
+     */
+    public void mapLines(@NotNull Function<Integer, Integer> lineMapping) {
+      flush();
+      int j = 0;
+      for (int i = 0; i < size; i++) {
+        final FileLocation location = entries[i];
+        if (location.isClear()) {
+          continue;
+        }
+        final int line = lineMapping.fun(lines[i]);
+        location.setLogicalLine(line);
+        entries[j] = location;
+        lines[j] = line;
+        j++;
+      }
+      Arrays.fill(entries, j, size, null);
+      size = j;
+    }
+
+    private int getLine(int i) {
+      int line = lines[i];
+      for (int j = i + 1; j > 0; j -= j & -j) {
+        line += tree[j];
+      }
+      return line;
+    }
+
+    private void setLine(int i, int line) {
+      lines[i] += line - getLine(i);
+      shifted = true;
+    }
+
+    /**
+     * Adds the number of lines to the locations starting from the given index.
+     */
+    private void shift(int i, int count) {
+      if (i >= size || count == 0) {
+        return;
+      }
+      for (int j = i + 1; j <= size; j += j & -j) {
+        tree[j] += count;
+      }
+      shifted = true;
+    }
+
+    /**
+     * Returns the index of the first location after the line or the number of locations if there is none.
+     */
+    private int findFirstAfter(int line) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (getLine(mid) > line) {
+          high = mid;
+        }
+        else {
+          low = mid + 1;
+        }
+      }
+      return low;
+    }
+
+    @NotNull private FileLocation[] entries = new FileLocation[16];
+    @NotNull private int[] lines = new int[16];
+    @NotNull private int[] tree = new int[17];
+    private int size = 0;
+    private boolean shifted = false;
   }
 
   /**
@@ -627,7 +801,7 @@ public class MarkGroup {
 
     /**
      * This event indicates that a document is about to be changed. We use this event to update all the
-     * editor's marks if text is about to be deleted.
+     * marks and jumps of the document if text is about to be deleted.
      *
      * @param event The change event
      */
@@ -635,17 +809,18 @@ public class MarkGroup {
       if (!VimPlugin.isEnabled()) return;
 
       if (logger.isDebugEnabled()) logger.debug("MarkUpdater before, event = " + event);
-      if (event.getOldLength() == 0) return;
+      if (event.getOldLength() == 0 || VimPlugin.getMark().bulkChanges > 0) return;
 
-      Document doc = event.getDocument();
-      updateMarkFromDelete(getAnEditor(doc), VimPlugin.getMark().getAllFileMarks(doc), event.getOffset(),
-                           event.getOldLength());
-      // TODO - update jumps
+      final Document doc = event.getDocument();
+      final FileLocations fileLocations = VimPlugin.getMark().getLocations(doc);
+      if (fileLocations != null) {
+        fileLocations.delete(doc, event.getOffset(), event.getOffset() + event.getOldLength());
+      }
     }
 
     /**
-     * This event indicates that a document was just changed. We use this event to update all the editor's
-     * marks if text was just added.
+     * This event indicates that a document was just changed. We use this event to update all the marks and
+     * jumps of the document if text was just added.
      *
      * @param event The change event
      */
@@ -653,23 +828,12 @@ public class MarkGroup {
       if (!VimPlugin.isEnabled()) return;
 
       if (logger.isDebugEnabled()) logger.debug("MarkUpdater after, event = " + event);
-      if (event.getNewLength() == 0 || (event.getNewLength() == 1 && !event.getNewFragment().equals("\n"))) return;
-
-      Document doc = event.getDocument();
-      updateMarkFromInsert(getAnEditor(doc), VimPlugin.getMark().getAllFileMarks(doc), event.getOffset(),
-                           event.getNewLength());
-      // TODO - update jumps
-    }
+      if (event.getNewLength() == 0 || VimPlugin.getMark().bulkChanges > 0) return;
 
-    @Nullable
-    private Editor getAnEditor(@NotNull Document doc) {
-      Editor[] editors = EditorFactory.getInstance().getEditors(doc);
-
-      if (editors.length > 0) {
-        return editors[0];
-      }
-      else {
-        return null;
+      final Document doc = event.getDocument();
+      final FileLocations fileLocations = VimPlugin.getMark().getLocations(doc);
+      if (fileLocations != null) {
+        fileLocations.insert(doc, event.getOffset(), event.getNewFragment());
       }
     }
   }
@@ -677,7 +841,9 @@ public class MarkGroup {
   @NotNull private final HashMap<String, FileMarks<Character, Mark>> fileMarks = new HashMap<String, FileMarks<Character, Mark>>();
   @NotNull private final HashMap<Character, Mark> globalMarks = new HashMap<Character, Mark>();
   @NotNull private final List<Jump> jumps = new ArrayList<Jump>();
+  @NotNull private final HashMap<String, FileLocations> locations = new HashMap<String, FileLocations>();
   private int jumpSpot = -1;
+  private int bulkChanges = 0;
 
   private static final int SAVE_MARK_COUNT = 20;
   private static final int SAVE_JUMP_COUNT = 100;
@@ -41,6 +41,7 @@ import com.maddyhome.idea.vim.common.TextRange;
 import com.maddyhome.idea.vim.ex.ExOutputModel;
 import com.maddyhome.idea.vim.helper.EditorData;
 import com.maddyhome.idea.vim.helper.EditorHelper;
+import com.maddyhome.idea.vim.helper.LatencyStats;
 import com.maddyhome.idea.vim.helper.SearchHelper;
 import com.maddyhome.idea.vim.option.BoundStringOption;
 import com.maddyhome.idea.vim.option.NumberOption;
@@ -396,8 +397,14 @@ public class MotionGroup {
         return -1;
       }
       final int line = mark.getLogicalLine();
-      if (!vf.getPath().equals(mark.getFilename())) {
-        final Editor selectedEditor = selectEditor(editor, vf);
+      final String filename = mark.getFilename();
+      if (!vf.getPath().equals(filename) && filename != null) {
+        final VirtualFile markFile =
+          LocalFileSystem.getInstance().findFileByPath(filename.replace(File.separatorChar, '/'));
+        if (markFile == null) {
+          return -1;
+        }
+        final Editor selectedEditor = selectEditor(editor, markFile);
         if (selectedEditor != null) {
           moveCaret(selectedEditor, moveCaretToLineStartSkipLeading(selectedEditor, line));
         }
@@ -431,8 +438,14 @@ public class MotionGroup {
         return -1;
       }
       final LogicalPosition lp = new LogicalPosition(mark.getLogicalLine(), mark.getCol());
-      if (!vf.getPath().equals(mark.getFilename())) {
-        final Editor selectedEditor = selectEditor(editor, vf);
+      final String filename = mark.getFilename();
+      if (!vf.getPath().equals(filename) && filename != null) {
+        final VirtualFile markFile =
+          LocalFileSystem.getInstance().findFileByPath(filename.replace(File.separatorChar, '/'));
+        if (markFile == null) {
+          return -1;
+        }
+        final Editor selectedEditor = selectEditor(editor, markFile);
         if (selectedEditor != null) {
           moveCaret(selectedEditor, selectedEditor.logicalPositionToOffset(lp));
         }
@@ -1204,6 +1217,16 @@ public class MotionGroup {
   }
 
   private static void moveCaret(@NotNull Editor editor, int offset, boolean forceKeepVisual) {
+    final LatencyStats.Sample sample = LatencyStats.start("moveCaret");
+    try {
+      doMoveCaret(editor, offset, forceKeepVisual);
+    }
+    finally {
+      LatencyStats.stop(sample);
+    }
+  }
+
+  private static void doMoveCaret(@NotNull Editor editor, int offset, boolean forceKeepVisual) {
     if (offset >= 0 && offset <= editor.getDocument().getTextLength()) {
       final boolean keepVisual = forceKeepVisual || keepVisual(editor);
       if (editor.getCaretModel().getOffset() != offset) {
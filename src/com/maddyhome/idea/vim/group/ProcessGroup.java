@@ -19,8 +19,17 @@
 package com.maddyhome.idea.vim.group;
 
 import com.intellij.openapi.actionSystem.DataContext;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Ref;
 import com.intellij.util.text.CharSequenceReader;
 import com.maddyhome.idea.vim.KeyHandler;
 import com.maddyhome.idea.vim.VimPlugin;
@@ -30,6 +39,10 @@ import com.maddyhome.idea.vim.command.MappingMode;
 import com.maddyhome.idea.vim.common.TextRange;
 import com.maddyhome.idea.vim.ex.CommandParser;
 import com.maddyhome.idea.vim.ex.ExException;
+import com.maddyhome.idea.vim.ex.ExOutputModel;
+import com.maddyhome.idea.vim.helper.MessageHelper;
+import com.maddyhome.idea.vim.helper.Msg;
+import com.maddyhome.idea.vim.helper.RunnableHelper;
 import com.maddyhome.idea.vim.helper.UiHelper;
 import com.maddyhome.idea.vim.ui.ExEntryPanel;
 import org.jetbrains.annotations.NotNull;
@@ -37,6 +50,7 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.io.*;
+import java.util.concurrent.*;
 
 /**
  *
@@ -122,7 +136,7 @@ public class ProcessGroup {
         int pos = VimPlugin.getSearch().search(editor, text, panel.getCount(),
                                                                  panel.getLabel().equals("/")
                                                                  ? Command.FLAG_SEARCH_FWD
-                                                                 : Command.FLAG_SEARCH_REV, true);
+                                                                 : Command.FLAG_SEARCH_REV, true, true);
         if (pos == -1) {
           res = false;
         }
@@ -182,41 +196,338 @@ public class ProcessGroup {
     return initText;
   }
 
-  public boolean executeFilter(@NotNull Editor editor, @NotNull TextRange range,
-                               @NotNull String command) throws IOException {
-    final CharSequence charsSequence = editor.getDocument().getCharsSequence();
+  /**
+   * Filters the text of the range through the command, see :help :range!.
+   *
+   * A command typed by the user within a write action is run after the write action finishes, so the progress dialog
+   * can run it in the background, and its output then replaces the range in a write command of its own. The commands
+   * of mappings and macros are run right away, since the keys after them expect the filtered text.
+   *
+   * @return False if the command couldn't be run or failed, true if it succeeded or has been deferred
+   */
+  public boolean executeFilter(@NotNull final Editor editor, @NotNull TextRange range, @NotNull final String command) {
+    final Document document = editor.getDocument();
     final int startOffset = range.getStartOffset();
     final int endOffset = range.getEndOffset();
-    final String output = executeCommand(command, charsSequence.subSequence(startOffset, endOffset));
-    editor.getDocument().replaceString(startOffset, endOffset, output);
-    return true;
+    final String input = document.getCharsSequence().subSequence(startOffset, endOffset).toString();
+    final RangeMarker marker = document.createRangeMarker(startOffset, endOffset);
+    return runShellCommand(new Computable<Boolean>() {
+      @Override
+      public Boolean compute() {
+        try {
+          final Ref<Integer> exitCode = Ref.create(0);
+          final String output = executeCommandWithMessages(editor, command, input, exitCode);
+          // A failed command without output leaves the text as it is
+          if (output == null || !marker.isValid() || (exitCode.get() != 0 && output.length() == 0)) {
+            return false;
+          }
+          RunnableHelper.runWriteCommand(editor.getProject(), new Runnable() {
+            @Override
+            public void run() {
+              document.replaceString(marker.getStartOffset(), marker.getEndOffset(), output);
+            }
+          }, "Vim Filter", null);
+          return exitCode.get() == 0;
+        }
+        finally {
+          marker.dispose();
+        }
+      }
+    });
+  }
+
+  /**
+   * Runs the command and shows its output, see :help :!cmd. The command is run like the one of {@link #executeFilter}.
+   *
+   * @return False if the command couldn't be run or failed, true if it succeeded or has been deferred
+   */
+  public boolean executeShellCommand(@NotNull final Editor editor, @NotNull final String command) {
+    return runShellCommand(new Computable<Boolean>() {
+      @Override
+      public Boolean compute() {
+        final Ref<Integer> exitCode = Ref.create(0);
+        final String output = executeCommandWithMessages(editor, command, null, exitCode);
+        if (output == null) {
+          return false;
+        }
+        ExOutputModel.getInstance(editor).output(output);
+        return exitCode.get() == 0;
+      }
+    });
+  }
+
+  private static boolean runShellCommand(@NotNull final Computable<Boolean> action) {
+    final Application application = ApplicationManager.getApplication();
+    if (application.isWriteAccessAllowed() && !KeyHandler.getInstance().isExecutingMapping() &&
+        !VimPlugin.getMacro().isPlayingBack()) {
+      application.invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          action.compute();
+        }
+      });
+      return true;
+    }
+    return action.compute();
+  }
+
+  /**
+   * Runs the command with a progress dialog, reporting errors and nonzero exit codes of the command together with its
+   * error output.
+   *
+   * @return The standard output of the command or null if it couldn't be run or has been canceled
+   */
+  @Nullable
+  private String executeCommandWithMessages(@NotNull Editor editor, @NotNull String command,
+                                            @Nullable CharSequence input, @NotNull Ref<Integer> exitCode) {
+    if (editor.isDisposed()) {
+      return null;
+    }
+    final Ref<String> errors = Ref.create("");
+    final String output;
+    try {
+      output = executeCommandWithProgress(editor.getProject(), command, input, exitCode, errors);
+    }
+    catch (IOException e) {
+      VimPlugin.showMessage(e.getMessage());
+      VimPlugin.indicateError();
+      return null;
+    }
+    if (output != null && exitCode.get() != 0) {
+      final String error = errors.get().trim().replaceAll("\\s*\\n\\s*", " ");
+      VimPlugin.showMessage(error.length() > 0
+                            ? MessageHelper.message(Msg.shell_returned_error, exitCode.get(), error)
+                            : MessageHelper.message(Msg.shell_returned, exitCode.get()));
+      VimPlugin.indicateError();
+    }
+    return output;
   }
 
+  /**
+   * Runs the command showing a progress dialog that allows the user to cancel it.
+   *
+   * @return The standard output of the command or null if it has been canceled
+   */
+  @Nullable
+  private String executeCommandWithProgress(@Nullable Project project, @NotNull final String command,
+                                            @Nullable final CharSequence input,
+                                            @NotNull final Ref<Integer> exitCode,
+                                            @NotNull final Ref<String> errors) throws IOException {
+    final Ref<String> output = Ref.create();
+    final Ref<IOException> error = Ref.create();
+    final boolean completed = ProgressManager.getInstance().runProcessWithProgressSynchronously(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          output.set(executeCommand(command, input, exitCode, errors));
+        }
+        catch (IOException e) {
+          error.set(e);
+        }
+      }
+    }, "Running " + command, true, project);
+    if (!error.isNull()) {
+      throw error.get();
+    }
+    return completed ? output.get() : null;
+  }
+
+  /**
+   * Runs the command feeding it with the input and returns its standard output.
+   *
+   * Standard input, output and error of the process are pumped concurrently, so the process never blocks on a full
+   * pipe. If the command runs with a progress indicator it can be canceled and the indicator shows the amount of
+   * output read so far. The process is killed if it doesn't finish within {@link #COMMAND_TIMEOUT} milliseconds.
+   *
+   * @throws IOException if the command can't be run or times out
+   */
   @NotNull
   public String executeCommand(@NotNull String command, @Nullable CharSequence input) throws IOException {
+    return executeCommand(command, input, null, null);
+  }
+
+  @NotNull
+  private String executeCommand(@NotNull String command, @Nullable CharSequence input,
+                                @Nullable Ref<Integer> exitCodeRef, @Nullable Ref<String> errorsRef)
+    throws IOException {
     if (logger.isDebugEnabled()) {
       logger.debug("command=" + command);
     }
 
+    final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    final Application application = ApplicationManager.getApplication();
+    final long startTime = System.currentTimeMillis();
     final Process process = Runtime.getRuntime().exec(command);
 
-    if (input != null) {
-      final BufferedWriter outputWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
-      copy(new CharSequenceReader(input), outputWriter);
-      outputWriter.close();
+    try {
+      final Future<?> inputPump = application.executeOnPooledThread(new InputPump(process.getOutputStream(), input));
+      final OutputPump stdout = new OutputPump(process.getInputStream(), Integer.MAX_VALUE);
+      final OutputPump stderr = new OutputPump(process.getErrorStream(), MAX_ERROR_OUTPUT);
+      final Future<?> outputFuture = application.executeOnPooledThread(stdout);
+      final Future<?> errorFuture = application.executeOnPooledThread(stderr);
+
+      while (!outputFuture.isDone()) {
+        if (indicator != null) {
+          indicator.checkCanceled();
+          indicator.setText2(getTransferRate(stdout.getCount(), System.currentTimeMillis() - startTime));
+        }
+        if (System.currentTimeMillis() - startTime > COMMAND_TIMEOUT) {
+          throw new IOException("Command timed out: " + command);
+        }
+        waitFor(outputFuture);
+      }
+      waitFor(errorFuture);
+      waitFor(inputPump);
+
+      final int exitCode = process.waitFor();
+      if (logger.isDebugEnabled()) {
+        logger.debug("exit code=" + exitCode + ", " +
+                     getTransferRate(stdout.getCount(), System.currentTimeMillis() - startTime));
+      }
+
+      if (exitCode != 0 && logger.isDebugEnabled()) {
+        logger.debug("errors=" + stderr.getOutput());
+      }
+      if (exitCodeRef != null) {
+        exitCodeRef.set(exitCode);
+      }
+      if (errorsRef != null) {
+        errorsRef.set(stderr.getOutput());
+      }
+
+      lastCommand = command;
+      return stdout.getOutput();
+    }
+    catch (InterruptedException e) {
+      throw new IOException("Command interrupted: " + command);
+    }
+    finally {
+      process.destroy();
+    }
+  }
+
+  private static void waitFor(@NotNull Future<?> future) throws IOException, InterruptedException {
+    try {
+      future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+    catch (TimeoutException ignored) {
+    }
+    catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      throw new IOException(cause != null ? cause.getMessage() : e.getMessage());
+    }
+  }
+
+  @NotNull
+  private static String getTransferRate(long bytes, long millis) {
+    return String.format("%d KB read, %d KB/s", bytes / 1024, millis > 0 ? bytes * 1000 / 1024 / millis : 0);
+  }
+
+  /**
+   * Writes the input to the standard input of the process and closes it, so the process sees the end of its input.
+   */
+  private static class InputPump implements Callable<Object> {
+    public InputPump(@NotNull OutputStream stream, @Nullable CharSequence input) {
+      this.stream = stream;
+      this.input = input;
+    }
+
+    @Nullable
+    @Override
+    public Object call() throws IOException {
+      final Writer writer = new BufferedWriter(new OutputStreamWriter(stream));
+      try {
+        if (input != null) {
+          copy(new CharSequenceReader(input), writer);
+        }
+      }
+      finally {
+        try {
+          writer.close();
+        }
+        catch (IOException e) {
+          // The process may have exited without reading all of its input
+          logger.debug(e);
+        }
+      }
+      return null;
+    }
+
+    @NotNull private final OutputStream stream;
+    @Nullable private final CharSequence input;
+  }
+
+  /**
+   * Reads the output of the process in chunks, keeping at most the given number of characters.
+   */
+  private static class OutputPump implements Callable<Object> {
+    public OutputPump(@NotNull InputStream stream, int limit) {
+      this.stream = new CountingInputStream(stream);
+      this.limit = limit;
+    }
+
+    @Nullable
+    @Override
+    public Object call() throws IOException {
+      final Reader reader = new InputStreamReader(stream);
+      try {
+        final char[] buf = new char[BUFFER_SIZE];
+        int cnt;
+        while ((cnt = reader.read(buf)) != -1) {
+          builder.append(buf, 0, Math.min(cnt, Math.max(0, limit - builder.length())));
+        }
+      }
+      finally {
+        reader.close();
+      }
+      return null;
+    }
+
+    public long getCount() {
+      return stream.count;
+    }
+
+    @NotNull
+    public String getOutput() {
+      return builder.toString();
     }
 
-    final BufferedReader inputReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-    final StringWriter writer = new StringWriter();
-    copy(inputReader, writer);
-    writer.close();
+    @NotNull private final CountingInputStream stream;
+    private final int limit;
+    @NotNull private final StringBuilder builder = new StringBuilder();
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+    public CountingInputStream(@NotNull InputStream in) {
+      super(in);
+    }
 
-    lastCommand = command;
-    return writer.toString();
+    @Override
+    public int read() throws IOException {
+      final int c = super.read();
+      if (c != -1) {
+        count++;
+      }
+      return c;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+      final int cnt = super.read(b, off, len);
+      if (cnt > 0) {
+        count += cnt;
+      }
+      return cnt;
+    }
+
+    private volatile long count = 0;
   }
 
-  private void copy(@NotNull Reader from, @NotNull Writer to) throws IOException {
-    char[] buf = new char[2048];
+  private static void copy(@NotNull Reader from, @NotNull Writer to) throws IOException {
+    char[] buf = new char[BUFFER_SIZE];
     int cnt;
     while ((cnt = from.read(buf)) != -1) {
       to.write(buf, 0, cnt);
@@ -225,5 +536,13 @@ public class ProcessGroup {
 
   private String lastCommand;
 
+  /**
+   * The time in milliseconds after which external commands are killed
+   */
+  public static final long COMMAND_TIMEOUT = 10 * 60 * 1000;
+  private static final long POLL_INTERVAL = 100;
+  private static final int BUFFER_SIZE = 8192;
+  private static final int MAX_ERROR_OUTPUT = 64 * 1024;
+
   private static final Logger logger = Logger.getInstance(ProcessGroup.class.getName());
 }
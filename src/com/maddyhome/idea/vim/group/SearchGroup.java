@@ -17,12 +17,19 @@
  */
 package com.maddyhome.idea.vim.group;
 
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.editor.colors.EditorColors;
 import com.intellij.openapi.editor.event.DocumentAdapter;
 import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.EditorFactoryAdapter;
+import com.intellij.openapi.editor.event.EditorFactoryEvent;
+import com.intellij.openapi.editor.event.VisibleAreaEvent;
+import com.intellij.openapi.editor.event.VisibleAreaListener;
 import com.intellij.openapi.editor.markup.HighlighterLayer;
 import com.intellij.openapi.editor.markup.HighlighterTargetArea;
 import com.intellij.openapi.editor.markup.RangeHighlighter;
@@ -30,35 +37,50 @@ import com.intellij.openapi.editor.markup.TextAttributes;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.FileEditorManagerAdapter;
 import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.Function;
+import com.maddyhome.idea.vim.EventFacade;
+import com.maddyhome.idea.vim.KeyHandler;
 import com.maddyhome.idea.vim.VimPlugin;
 import com.maddyhome.idea.vim.command.Command;
 import com.maddyhome.idea.vim.command.CommandState;
+import com.maddyhome.idea.vim.command.MappingMode;
 import com.maddyhome.idea.vim.command.SelectionType;
 import com.maddyhome.idea.vim.common.CharacterPosition;
 import com.maddyhome.idea.vim.common.TextRange;
 import com.maddyhome.idea.vim.ex.LineRange;
 import com.maddyhome.idea.vim.helper.*;
+import com.maddyhome.idea.vim.option.NumberOption;
 import com.maddyhome.idea.vim.option.OptionChangeEvent;
 import com.maddyhome.idea.vim.option.OptionChangeListener;
 import com.maddyhome.idea.vim.option.Options;
 import com.maddyhome.idea.vim.regexp.CharHelper;
 import com.maddyhome.idea.vim.regexp.CharPointer;
 import com.maddyhome.idea.vim.regexp.CharacterClasses;
+import com.maddyhome.idea.vim.regexp.LineIndex;
+import com.maddyhome.idea.vim.regexp.MatchLimit;
 import com.maddyhome.idea.vim.regexp.RegExp;
+import com.maddyhome.idea.vim.regexp.RegExpCache;
 import org.jdom.Element;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import javax.swing.*;
+import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
 import java.text.NumberFormat;
 import java.text.ParsePosition;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.*;
+import java.util.List;
 
 /**
  *
@@ -71,6 +93,44 @@ public class SearchGroup {
         updateHighlight();
       }
     });
+
+    EventFacade.getInstance().addEditorFactoryListener(new EditorFactoryAdapter() {
+      @Override
+      public void editorCreated(@NotNull EditorFactoryEvent event) {
+        addEditorListener(event.getEditor());
+      }
+
+      @Override
+      public void editorReleased(@NotNull EditorFactoryEvent event) {
+        removeEditorListener(event.getEditor());
+      }
+    }, ApplicationManager.getApplication());
+  }
+
+  public void turnOn() {
+    for (Editor editor : EditorFactory.getInstance().getAllEditors()) {
+      addEditorListener(editor);
+    }
+  }
+
+  public void turnOff() {
+    for (Editor editor : EditorFactory.getInstance().getAllEditors()) {
+      removeEditorListener(editor);
+    }
+  }
+
+  private void addEditorListener(@NotNull Editor editor) {
+    if (!EditorData.getSearchGroup(editor)) {
+      EventFacade.getInstance().addVisibleAreaListener(editor, visibleAreaListener);
+      EditorData.setSearchGroup(editor, true);
+    }
+  }
+
+  private void removeEditorListener(@NotNull Editor editor) {
+    if (EditorData.getSearchGroup(editor)) {
+      EventFacade.getInstance().removeVisibleAreaListener(editor, visibleAreaListener);
+      EditorData.setSearchGroup(editor, false);
+    }
   }
 
   @Nullable
@@ -91,6 +151,49 @@ public class SearchGroup {
     VimPlugin.getHistory().addEntry(HistoryGroup.SEARCH, lastPattern);
   }
 
+  /**
+   * Marks the lines of the range that contain a match of the pattern, see :help :global. The pattern becomes the last
+   * search pattern. An empty pattern means the last used pattern.
+   *
+   * @return The marked lines or null if there is no pattern or it is invalid
+   */
+  @Nullable
+  public BitSet markMatchingLines(@NotNull Editor editor, @NotNull LineRange range, @NotNull String pattern) {
+    if (pattern.length() == 0) {
+      pattern = lastPattern;
+      if (pattern == null || pattern.length() == 0) {
+        VimPlugin.showMessage(MessageHelper.message(Msg.e_noprevre));
+        return null;
+      }
+    }
+
+    lastSearch = pattern;
+    setLastPattern(editor, pattern);
+
+    final RegExp sp = new RegExp();
+    final RegExp.regmmatch_T regmatch = new RegExp.regmmatch_T();
+    regmatch.regprog = RegExpCache.compile(sp, pattern, 1);
+    if (regmatch.regprog == null) {
+      VimPlugin.showMessage(MessageHelper.message(Msg.e_invcmd));
+      return null;
+    }
+    regmatch.rmm_ic = shouldIgnoreCase(pattern, false);
+
+    final LineIndex index = LineIndex.forEditor(editor);
+    final int lineCount = index.getLineCount();
+    final int endLine = Math.min(range.getEndLine(), lineCount - 1);
+    final BitSet lines = new BitSet(endLine + 1);
+    int lnum = Math.max(range.getStartLine(), 0);
+    while (sp.vim_regexec_nextmatch(regmatch, index, lineCount, lnum, 0, endLine + 1, null) > 0) {
+      lines.set(regmatch.rmm_lnum);
+      lnum = regmatch.rmm_lnum + 1;
+    }
+
+    searchHighlight(false);
+
+    return lines;
+  }
+
   public boolean searchAndReplace(@NotNull Editor editor, @NotNull LineRange range, @NotNull String excmd, String exarg) {
     boolean res = true;
 
@@ -100,8 +203,8 @@ public class SearchGroup {
     }
 
     CharPointer cmd = new CharPointer(new StringBuffer(exarg));
-    //sub_nsubs = 0;
-    //sub_nlines = 0;
+    sub_nsubs = 0;
+    sub_nlines = 0;
 
     int which_pat;
     if (excmd.equals("~")) {
@@ -276,7 +379,7 @@ public class SearchGroup {
     RegExp sp;
     RegExp.regmmatch_T regmatch = new RegExp.regmmatch_T();
     sp = new RegExp();
-    regmatch.regprog = sp.vim_regcomp(pattern, 1);
+    regmatch.regprog = RegExpCache.compile(sp, pattern, 1);
     if (regmatch.regprog == null) {
       if (do_error) {
         VimPlugin.showMessage(MessageHelper.message(Msg.e_invcmd));
@@ -319,11 +422,16 @@ public class SearchGroup {
       logger.debug("pattern=" + pattern + ", replace=" + sub);
     }
     int lastMatch = -1;
+    int lastMatchLine = -1;
     int lastLine = -1;
     int searchcol = 0;
     boolean firstMatch = true;
     boolean got_quit = false;
     int lcount = EditorHelper.getLineCount(editor);
+    if (!do_ask) {
+      lastMatch = substituteAll(editor, sp, regmatch, sub, line1, line2);
+      got_quit = true;
+    }
     for (int lnum = line1; lnum <= line2 && !got_quit; ) {
       CharacterPosition newpos = null;
       int nmatch = sp.vim_regexec_multi(regmatch, editor, lcount, lnum, searchcol);
@@ -378,6 +486,11 @@ public class SearchGroup {
 
           if (doReplace) {
             editor.getDocument().replaceString(startoff, endoff, match);
+            sub_nsubs++;
+            if (line != lastMatchLine) {
+              sub_nlines++;
+              lastMatchLine = line;
+            }
             lastMatch = startoff;
             newpos = EditorHelper.offsetToCharacterPosition(editor, newend);
 
@@ -413,6 +526,9 @@ public class SearchGroup {
       MotionGroup.moveCaret(editor, VimPlugin.getMotion()
         .moveCaretToLineStartSkipLeading(editor, editor.offsetToLogicalPosition(lastMatch).line
         ));
+      if (sub_nsubs > ((NumberOption)Options.getInstance().getOption("report")).value()) {
+        VimPlugin.showMessage(MessageHelper.message(Msg.nsubs, sub_nsubs, sub_nlines));
+      }
     }
     else {
       VimPlugin.showMessage(MessageHelper.message(Msg.e_patnotf2, pattern));
@@ -421,6 +537,130 @@ public class SearchGroup {
     return res;
   }
 
+  /**
+   * Replaces the matches in the lines from line1 to line2 without asking for confirmation.
+   *
+   * The matches are searched for in a snapshot of the document and the replaced text is built while searching, so the
+   * document is changed only once. The listeners of the document, including the search highlighting and the marks,
+   * process a single change instead of one change per match.
+   *
+   * @return The offset of the last replacement in the changed document or -1 if nothing was replaced
+   */
+  private int substituteAll(@NotNull Editor editor, @NotNull RegExp sp, @NotNull RegExp.regmmatch_T regmatch,
+                            @NotNull CharPointer sub, int line1, int line2) {
+    final Document document = editor.getDocument();
+    final LineIndex index = LineIndex.forText(document.getText(), editor.getCaretModel().getOffset());
+    final Substitution substitution = substitute(index, sp, regmatch, sub, line1, line2, do_all);
+    sub_nsubs += substitution.count;
+    sub_nlines += substitution.lines;
+    if (substitution.start == -1) {
+      return -1;
+    }
+
+    VimPlugin.getMark().saveJumpLocation(editor);
+    VimPlugin.getMark().runBulkChange(document, new Runnable() {
+      @Override
+      public void run() {
+        document.replaceString(substitution.start, substitution.end, substitution.text);
+      }
+    }, substitution.shifts);
+
+    return substitution.start + substitution.lastStart;
+  }
+
+  /**
+   * Builds the text of the lines from line1 to line2 with the matches replaced, all the matches of each line or only
+   * the first one. The text from the start of the first match to the end of the last one is built.
+   */
+  @NotNull
+  public static Substitution substitute(@NotNull LineIndex index, @NotNull RegExp sp,
+                                        @NotNull RegExp.regmmatch_T regmatch, @NotNull CharPointer sub, int line1,
+                                        int line2, boolean all) {
+    final CharSequence text = index.getText();
+    final int lcount = index.getLineCount();
+    final Substitution res = new Substitution();
+    int copied = -1;
+    int lastLine = -1;
+    int searchcol = 0;
+    for (int lnum = line1; lnum <= line2; ) {
+      final int nmatch = sp.vim_regexec_nextmatch(regmatch, index, lcount, lnum, searchcol, line2 + 1, null);
+      if (nmatch <= 0) {
+        break;
+      }
+      lnum = regmatch.rmm_lnum;
+
+      final int line = lnum + regmatch.startpos[0].lnum;
+      final int endLine = lnum + regmatch.endpos[0].lnum;
+      final int startoff = index.getLineStartOffset(line) + regmatch.startpos[0].col;
+      final int endoff = index.getLineStartOffset(endLine) + regmatch.endpos[0].col;
+
+      if (all || line != lastLine) {
+        final String match = sp.vim_regsub_multi(regmatch, lnum, sub, 1, false);
+        if (res.start == -1) {
+          res.start = startoff;
+          copied = startoff;
+        }
+        res.text.append(text, copied, startoff);
+        res.lastStart = res.text.length();
+        res.text.append(match);
+        copied = endoff;
+        res.shifts.add(line, endLine, StringUtil.countNewLines(match) - (endLine - line));
+        res.count++;
+        if (line != lastLine) {
+          res.lines++;
+        }
+      }
+      lastLine = line;
+
+      if (all && startoff != endoff) {
+        lnum = endLine;
+        searchcol = regmatch.endpos[0].col;
+      }
+      else {
+        lnum += nmatch;
+        searchcol = 0;
+      }
+    }
+    res.end = copied;
+    return res;
+  }
+
+  /**
+   * The replaced text of a substitution, see {@link #substitute}.
+   */
+  public static class Substitution {
+    /**
+     * The offset of the start of the first replaced match or -1 if nothing was replaced
+     */
+    public int getStart() {
+      return start;
+    }
+
+    /**
+     * The offset of the end of the last replaced match
+     */
+    public int getEnd() {
+      return end;
+    }
+
+    @NotNull
+    public CharSequence getText() {
+      return text;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    private int start = -1;
+    private int end = -1;
+    private int lastStart = -1;
+    private int count = 0;
+    private int lines = 0;
+    @NotNull private final StringBuilder text = new StringBuilder();
+    @NotNull private final LineShifts shifts = new LineShifts();
+  }
+
   private int getConfirmChoice(String match) {
     Object[] btns = getConfirmButtons();
     confirmDlg = new JOptionPane("Replace with " + match + " ?", JOptionPane.QUESTION_MESSAGE,
@@ -473,10 +713,17 @@ public class SearchGroup {
     return confirmBtns;
   }
 
-  public int search(@NotNull Editor editor, @NotNull String command, int count, int flags, boolean moveCursor) {
-    int res = search(editor, command, editor.getCaretModel().getOffset(), count, flags);
-
-    if (res != -1 && moveCursor) {
+  /**
+   * Searches for the pattern of the search command starting at the caret.
+   *
+   * In large documents the search may be run in the background if allowed. In this case {@link #BACKGROUND_SEARCH}
+   * is returned and the caret is moved to the match when the search finishes.
+   */
+  public int search(@NotNull Editor editor, @NotNull String command, int count, int flags, boolean moveCursor,
+                    boolean allowBackground) {
+    int res = search(editor, command, editor.getCaretModel().getOffset(), count, flags, allowBackground);
+
+    if (res >= 0 && moveCursor) {
       VimPlugin.getMark().saveJumpLocation(editor);
       MotionGroup.moveCaret(editor, res);
     }
@@ -484,7 +731,16 @@ public class SearchGroup {
     return res;
   }
 
+  public int search(@NotNull Editor editor, @NotNull String command, int count, int flags, boolean moveCursor) {
+    return search(editor, command, count, flags, moveCursor, false);
+  }
+
   public int search(@NotNull Editor editor, @NotNull String command, int startOffset, int count, int flags) {
+    return search(editor, command, startOffset, count, flags, false);
+  }
+
+  private int search(@NotNull Editor editor, @NotNull String command, int startOffset, int count, int flags,
+                     boolean allowBackground) {
     int dir = 1;
     char type = '/';
     String pattern = lastSearch;
@@ -534,7 +790,7 @@ public class SearchGroup {
 
     searchHighlight(false);
 
-    return findItOffset(editor, startOffset, count, lastDir, false);
+    return findItOffset(editor, startOffset, count, lastDir, false, allowBackground);
   }
 
   public int searchWord(@NotNull Editor editor, int count, boolean whole, int dir) {
@@ -565,13 +821,45 @@ public class SearchGroup {
   }
 
   public int searchNext(@NotNull Editor editor, int count) {
+    return searchNext(editor, count, false);
+  }
+
+  /**
+   * Searches for the next match of the last search. The search may be run in the background if allowed, see {@link
+   * #search(Editor, String, int, int, boolean, boolean)}.
+   */
+  public int searchNext(@NotNull Editor editor, int count, boolean allowBackground) {
     searchHighlight(false);
-    return findItOffset(editor, editor.getCaretModel().getOffset(), count, lastDir, false);
+    return findItOffset(editor, editor.getCaretModel().getOffset(), count, lastDir, false, allowBackground);
   }
 
   public int searchPrevious(@NotNull Editor editor, int count) {
+    return searchPrevious(editor, count, false);
+  }
+
+  public int searchPrevious(@NotNull Editor editor, int count, boolean allowBackground) {
     searchHighlight(false);
-    return findItOffset(editor, editor.getCaretModel().getOffset(), count, -lastDir, false);
+    return findItOffset(editor, editor.getCaretModel().getOffset(), count, -lastDir, false, allowBackground);
+  }
+
+  /**
+   * Cancels the search running in the background, if any. The caret stays where it is.
+   */
+  public void cancelBackgroundSearch() {
+    final BackgroundSearch search = backgroundSearch;
+    if (search != null) {
+      backgroundSearch = null;
+      search.cancel();
+    }
+  }
+
+  /**
+   * Lets the unit tests search in large documents in the background. The search is then started from the event queue,
+   * so the test can type more keys before it finishes.
+   */
+  @TestOnly
+  public static void setBackgroundSearchInTests(boolean enabled) {
+    backgroundSearchInTests = enabled;
   }
 
   public void updateHighlight() {
@@ -584,6 +872,16 @@ public class SearchGroup {
   }
 
   private void highlightSearch(final boolean noSmartCase) {
+    final LatencyStats.Sample sample = LatencyStats.start("highlightSearch");
+    try {
+      doHighlightSearch(noSmartCase);
+    }
+    finally {
+      LatencyStats.stop(sample);
+    }
+  }
+
+  private void doHighlightSearch(final boolean noSmartCase) {
     Project[] projects = ProjectManager.getInstance().getOpenProjects();
     for (Project project : projects) {
       Editor current = FileEditorManager.getInstance(project).getSelectedTextEditor();
@@ -608,44 +906,205 @@ public class SearchGroup {
         }
 
         removeSearchHighlight(editor);
-        highlightSearchLines(editor, 0, -1, lastSearch, shouldIgnoreCase(lastSearch, noSmartCase));
+        final boolean ic = shouldIgnoreCase(lastSearch, noSmartCase);
+        highlightVisibleSearchLines(editor, lastSearch, ic);
+        highlightSearchStripes(editor, lastSearch, ic);
 
         EditorData.setLastSearch(editor, lastSearch);
+        EditorData.setLastSearchIgnoreCase(editor, ic);
       }
     }
   }
 
+  /**
+   * Highlights the matches in the lines that were scrolled into view since the last highlight update.
+   */
+  private void extendSearchHighlight(@NotNull Editor editor) {
+    if (!showSearchHighlight || lastSearch == null || !lastSearch.equals(EditorData.getLastSearch(editor))) {
+      return;
+    }
+
+    final LatencyStats.Sample sample = LatencyStats.start("extendSearchHighlight");
+    try {
+      highlightVisibleSearchLines(editor, lastSearch, EditorData.getLastSearchIgnoreCase(editor));
+    }
+    finally {
+      LatencyStats.stop(sample);
+    }
+  }
+
   private void highlightSearchLines(@NotNull Editor editor, boolean noSmartCase, int startLine, int endLine) {
     if (lastSearch != null) {
       highlightSearchLines(editor, startLine, endLine, lastSearch, shouldIgnoreCase(lastSearch, noSmartCase));
     }
   }
 
+  /**
+   * Highlights the matches in the visible lines of the editor plus {@link #HIGHLIGHT_MARGIN} lines around them,
+   * skipping the lines that are already highlighted.
+   */
+  private static void highlightVisibleSearchLines(@NotNull Editor editor, @NotNull String text, boolean ic) {
+    BitSet highlighted = EditorData.getHighlightedLines(editor);
+    if (highlighted == null) {
+      highlighted = new BitSet();
+      EditorData.setHighlightedLines(editor, highlighted);
+    }
+
+    final LineRange visible = getVisibleLineRange(editor);
+    int line = highlighted.nextClearBit(visible.getStartLine());
+    while (line <= visible.getEndLine()) {
+      int next = highlighted.nextSetBit(line);
+      int end = next == -1 || next > visible.getEndLine() + 1 ? visible.getEndLine() + 1 : next;
+      highlightSearchLines(editor, line, end - 1, text, ic);
+      highlighted.set(line, end);
+      line = highlighted.nextClearBit(end);
+    }
+  }
+
+  @NotNull
+  private static LineRange getVisibleLineRange(@NotNull Editor editor) {
+    final Rectangle area = editor.getScrollingModel().getVisibleArea();
+    final int top = editor.xyToLogicalPosition(new Point(area.x, area.y)).line;
+    final int bottom = editor.xyToLogicalPosition(new Point(area.x, area.y + area.height)).line;
+    final int lastLine = Math.max(0, EditorHelper.getLineCount(editor) - 1);
+    return new LineRange(Math.max(0, top - HIGHLIGHT_MARGIN), Math.min(lastLine, bottom + HIGHLIGHT_MARGIN));
+  }
+
   private static void highlightSearchLines(@NotNull Editor editor, int startLine, int endLine, String text, boolean ic) {
     TextAttributes color = editor.getColorsScheme().getAttributes(EditorColors.SEARCH_RESULT_ATTRIBUTES);
+    Collection<RangeHighlighter> hls = getOrCreateHighlights(editor);
+    removeStripeMarkers(editor, hls, startLine, endLine);
+
+    final int limit = MAX_HIGHLIGHTERS - hls.size();
+    if (limit <= 0) {
+      return;
+    }
+
+    for (TextRange range : findMatches(editor, startLine, endLine, text, ic, limit, createRedrawLimit())) {
+      RangeHighlighter rh = highlightMatch(editor, range.getStartOffset(), range.getEndOffset());
+      rh.setErrorStripeMarkColor(color.getBackgroundColor());
+      rh.setErrorStripeTooltip(text);
+      hls.add(rh);
+    }
+  }
+
+  /**
+   * Removes the error stripe markers without highlighting in the lines, the lines are about to be highlighted fully.
+   */
+  private static void removeStripeMarkers(@NotNull Editor editor, @NotNull Collection<RangeHighlighter> hls,
+                                          int startLine, int endLine) {
+    final int start = EditorHelper.getLineStartOffset(editor, startLine);
+    final int end = EditorHelper.getLineEndOffset(editor, endLine, true);
+    for (Iterator<RangeHighlighter> it = hls.iterator(); it.hasNext(); ) {
+      final RangeHighlighter rh = it.next();
+      if (rh.getTextAttributes() == null && rh.getStartOffset() >= start && rh.getStartOffset() <= end) {
+        editor.getMarkupModel().removeHighlighter(rh);
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Adds error stripe markers for the matches in the whole document. The matches are computed in a background read
+   * action and the markers are added later in the event dispatch thread unless the document or the search highlight
+   * has changed in the meantime.
+   */
+  private static void highlightSearchStripes(@NotNull final Editor editor, @NotNull final String text, final boolean ic) {
+    final Collection<RangeHighlighter> hls = getOrCreateHighlights(editor);
+    final long stamp = editor.getDocument().getModificationStamp();
+    final Application application = ApplicationManager.getApplication();
+    final Runnable addStripes = new Runnable() {
+      @Override
+      public void run() {
+        final List<TextRange> matches = application.runReadAction(new Computable<List<TextRange>>() {
+          @Override
+          public List<TextRange> compute() {
+            if (editor.isDisposed() || editor.getDocument().getModificationStamp() != stamp) {
+              return Collections.emptyList();
+            }
+            return findMatches(editor, 0, EditorHelper.getLineCount(editor), text, ic, MAX_STRIPE_MARKERS,
+                               createRedrawLimit());
+          }
+        });
+        if (matches.isEmpty()) {
+          return;
+        }
+        application.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            if (editor.isDisposed() || editor.getDocument().getModificationStamp() != stamp ||
+                EditorData.getLastHighlights(editor) != hls || !text.equals(EditorData.getLastSearch(editor))) {
+              return;
+            }
+            final BitSet highlighted = EditorData.getHighlightedLines(editor);
+            final Color color = editor.getColorsScheme().getAttributes(EditorColors.SEARCH_RESULT_ATTRIBUTES)
+              .getBackgroundColor();
+            for (TextRange range : matches) {
+              if (hls.size() >= MAX_HIGHLIGHTERS) {
+                break;
+              }
+              final int line = editor.getDocument().getLineNumber(range.getStartOffset());
+              if (highlighted != null && highlighted.get(line)) {
+                continue;
+              }
+              final RangeHighlighter rh = editor.getMarkupModel().addRangeHighlighter(
+                range.getStartOffset(), range.getEndOffset(), HighlighterLayer.ADDITIONAL_SYNTAX + 1, null,
+                HighlighterTargetArea.EXACT_RANGE);
+              rh.setErrorStripeMarkColor(color);
+              rh.setErrorStripeTooltip(text);
+              hls.add(rh);
+            }
+          }
+        });
+      }
+    };
+
+    if (application.isUnitTestMode()) {
+      addStripes.run();
+    }
+    else {
+      application.executeOnPooledThread(addStripes);
+    }
+  }
+
+  @NotNull
+  private static Collection<RangeHighlighter> getOrCreateHighlights(@NotNull Editor editor) {
     Collection<RangeHighlighter> hls = EditorData.getLastHighlights(editor);
     if (hls == null) {
       hls = new ArrayList<RangeHighlighter>();
       EditorData.setLastHighlights(editor, hls);
     }
+    return hls;
+  }
+
+  /**
+   * Returns the matches of the text in the lines from startLine to endLine, at most limit of them. The search stops
+   * early, returning the matches found so far, when the match limit is reached.
+   */
+  @NotNull
+  private static List<TextRange> findMatches(@NotNull Editor editor, int startLine, int endLine, String text,
+                                             boolean ic, int limit, @NotNull MatchLimit matchLimit) {
+    final List<TextRange> res = new ArrayList<TextRange>();
 
     int line2 = endLine == -1 ? EditorHelper.getLineCount(editor) : endLine;
 
     RegExp sp;
     RegExp.regmmatch_T regmatch = new RegExp.regmmatch_T();
     sp = new RegExp();
-    regmatch.regprog = sp.vim_regcomp(text, 1);
+    regmatch.regprog = RegExpCache.compile(sp, text, 1);
     if (regmatch.regprog == null) {
-      return;
+      return res;
     }
 
     regmatch.rmm_ic = ic;
 
     int searchcol = 0;
+    final LineIndex index = LineIndex.forEditor(editor);
     int lcount = EditorHelper.getLineCount(editor);
-    for (int lnum = startLine; lnum <= line2; ) {
-      int nmatch = sp.vim_regexec_multi(regmatch, editor, lcount, lnum, searchcol);
+    for (int lnum = startLine; lnum <= line2 && res.size() < limit && !matchLimit.isReached(); ) {
+      int nmatch = sp.vim_regexec_nextmatch(regmatch, index, lcount, lnum, searchcol, line2 + 1, matchLimit);
       if (nmatch > 0) {
+        lnum = regmatch.rmm_lnum;
         CharacterPosition startpos = new CharacterPosition(lnum + regmatch.startpos[0].lnum,
                                                            regmatch.startpos[0].col);
         CharacterPosition endpos = new CharacterPosition(lnum + regmatch.endpos[0].lnum,
@@ -653,10 +1112,7 @@ public class SearchGroup {
         int startoff = EditorHelper.characterPositionToOffset(editor, startpos);
         int endoff = EditorHelper.characterPositionToOffset(editor, endpos);
 
-        RangeHighlighter rh = highlightMatch(editor, startoff, endoff);
-        rh.setErrorStripeMarkColor(color.getBackgroundColor());
-        rh.setErrorStripeTooltip(text);
-        hls.add(rh);
+        res.add(new TextRange(startoff, endoff));
 
         if (startoff != endoff) {
           lnum += nmatch - 1;
@@ -668,10 +1124,58 @@ public class SearchGroup {
         }
       }
       else {
-        lnum++;
-        searchcol = 0;
+        break;
+      }
+    }
+
+    return res;
+  }
+
+  private int findItOffset(@NotNull Editor editor, int startOffset, int count, int dir, boolean noSmartCase,
+                           boolean allowBackground) {
+    if (allowBackground && isBackgroundSearchAllowed(editor)) {
+      final RegExp.regmmatch_T regmatch = compileLastSearch(noSmartCase);
+      if (regmatch == null) {
+        return -1;
       }
+      cancelBackgroundSearch();
+      final boolean wrap = Options.getInstance().isSet("wrapscan");
+      final BackgroundSearch search = new BackgroundSearch(editor, regmatch, startOffset, count, dir, wrap);
+      backgroundSearch = search;
+      if (ApplicationManager.getApplication().isUnitTestMode()) {
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            ProgressManager.getInstance().run(search);
+          }
+        });
+      }
+      else {
+        ProgressManager.getInstance().run(search);
+      }
+      return BACKGROUND_SEARCH;
+    }
+
+    return findItOffset(editor, startOffset, count, dir, noSmartCase);
+  }
+
+  /**
+   * Searching in the background is only possible for plain user typed commands. Mappings, macros and visual selections
+   * depend on the caret being moved before the next key is processed. Operators never allow it, since they need the
+   * end of their motion right away.
+   */
+  private static boolean isBackgroundSearchAllowed(@NotNull Editor editor) {
+    final Application application = ApplicationManager.getApplication();
+    if ((application.isUnitTestMode() && !backgroundSearchInTests) || !application.isDispatchThread()) {
+      return false;
     }
+    if (editor.getDocument().getLineCount() < BACKGROUND_SEARCH_LINES) {
+      return false;
+    }
+
+    final CommandState state = CommandState.getInstance(editor);
+    return state.getMode() == CommandState.Mode.COMMAND && state.getMappingMode() == MappingMode.NORMAL &&
+           !VimPlugin.getMacro().isPlayingBack() && !KeyHandler.getInstance().isExecutingMapping();
   }
 
   private int findItOffset(@NotNull Editor editor, int startOffset, int count, int dir,
@@ -682,6 +1186,10 @@ public class SearchGroup {
       return -1;
     }
 
+    return applySearchOffset(editor, range);
+  }
+
+  private int applySearchOffset(@NotNull Editor editor, @NotNull TextRange range) {
     //highlightMatch(editor, range.getStartOffset(), range.getEndOffset());
 
     ParsePosition pp = new ParsePosition(0);
@@ -770,44 +1278,93 @@ public class SearchGroup {
   @Nullable
   private TextRange findIt(@NotNull Editor editor, int startOffset, int count, int dir,
                            boolean noSmartCase, boolean wrap, boolean showMessages, boolean wholeFile) {
-    TextRange res = null;
+    final RegExp.regmmatch_T regmatch = compileLastSearch(noSmartCase);
+    if (regmatch == null) {
+      return null;
+    }
 
-    if (lastSearch == null || lastSearch.length() == 0) {
-      return res;
+    final CharacterPosition lpos = EditorHelper.offsetToCharacterPosition(editor, startOffset);
+    final SearchLimit limit = createSearchLimit();
+    final TextRange res = findIt(LineIndex.forEditor(editor), regmatch, lpos.line, lpos.column, count, dir, wrap,
+                                 wholeFile, null, limit);
+    if (res == null && showMessages) {
+      if (limit.isInterrupted()) {
+        VimPlugin.showMessage(MessageHelper.message(Msg.e_searchinterrupted, lastSearch));
+      }
+      else if (limit.isTimedOut()) {
+        VimPlugin.showMessage(MessageHelper.message(Msg.e_searchtimeout, lastSearch));
+      }
+      else {
+        showNotFoundMessage(lastSearch, dir, wrap);
+      }
     }
 
-    /*
-    int pflags = RE.REG_MULTILINE;
-    if (shouldIgnoreCase(lastSearch, noSmartCase))
-    {
-        pflags |= RE.REG_ICASE;
+    return res;
+  }
+
+  @Nullable
+  private RegExp.regmmatch_T compileLastSearch(boolean noSmartCase) {
+    if (lastSearch == null || lastSearch.length() == 0) {
+      return null;
     }
-    */
-    //RE sp;
-    RegExp sp;
+
     RegExp.regmmatch_T regmatch = new RegExp.regmmatch_T();
     regmatch.rmm_ic = shouldIgnoreCase(lastSearch, noSmartCase);
-    sp = new RegExp();
-    regmatch.regprog = sp.vim_regcomp(lastSearch, 1);
-    if (regmatch == null) {
+    regmatch.regprog = RegExpCache.compile(new RegExp(), lastSearch, 1);
+    if (regmatch.regprog == null) {
       if (logger.isDebugEnabled()) logger.debug("bad pattern: " + lastSearch);
-      return res;
+      return null;
     }
 
-    /*
-    int extra_col = 1;
-    int startcol = -1;
-    boolean found = false;
-    boolean match_ok = true;
-    LogicalPosition pos = editor.offsetToLogicalPosition(startOffset);
-    LogicalPosition endpos = null;
-    //REMatch match = null;
-    */
+    return regmatch;
+  }
+
+  /**
+   * Returns the limit for the matches of the search highlight, see 'redrawtime'.
+   */
+  @NotNull
+  private static MatchLimit createRedrawLimit() {
+    return new MatchLimit(((NumberOption)Options.getInstance().getOption("redrawtime")).value());
+  }
 
-    CharacterPosition lpos = EditorHelper.offsetToCharacterPosition(editor, startOffset);
+  /**
+   * Returns the limit for the matches of a search the editor waits for. A search has to look through the whole file,
+   * so it gets a multiple of 'redrawtime'. It can also be interrupted with Esc.
+   */
+  @NotNull
+  private static SearchLimit createSearchLimit() {
+    final int redrawTime = ((NumberOption)Options.getInstance().getOption("redrawtime")).value();
+    return new SearchLimit((long)redrawTime * SEARCH_TIMEOUT_FACTOR);
+  }
+
+  private static void showNotFoundMessage(@NotNull String pattern, int dir, boolean wrap) {
+    if (wrap) {
+      VimPlugin.showMessage(MessageHelper.message(Msg.e_patnotf2, pattern));
+    }
+    else if (dir == -1) {
+      VimPlugin.showMessage(MessageHelper.message(Msg.E384, pattern));
+    }
+    else {
+      VimPlugin.showMessage(MessageHelper.message(Msg.E385, pattern));
+    }
+  }
+
+  /**
+   * Searches the lines of the index for the compiled pattern starting at the given position.
+   *
+   * This doesn't use any editor state, so it can be run outside of the event dispatch thread against a snapshot of
+   * the document. If an indicator is given it is updated with the progress of the search and the search is abandoned
+   * returning null as soon as the indicator is canceled. The search is abandoned in the same way when the match limit
+   * is reached.
+   */
+  @Nullable
+  private static TextRange findIt(@NotNull LineIndex index, @NotNull RegExp.regmmatch_T regmatch, int startLine,
+                                  int startCol, int count, int dir, boolean wrap, boolean wholeFile,
+                                  @Nullable ProgressIndicator indicator, @Nullable MatchLimit limit) {
+    final RegExp sp = new RegExp();
     RegExp.lpos_T pos = new RegExp.lpos_T();
-    pos.lnum = lpos.line;
-    pos.col = lpos.column;
+    pos.lnum = startLine;
+    pos.col = startCol;
 
     int found;
     int lnum;           /* no init to shut up Apollo cc */
@@ -825,9 +1382,11 @@ public class SearchGroup {
     //int         submatch = 0;
     int first_lnum;
 
-    int lineCount = EditorHelper.getLineCount(editor);
-    int startLine = 0;
+    int lineCount = index.getLineCount();
+    int firstLine = 0;
     int endLine = lineCount;
+    int searched = 0;
+    int reported = 0;
 
     do  /* loop for count */ {
       start_pos = new RegExp.lpos_T(pos);       /* remember start pos for detecting no match */
@@ -851,22 +1410,49 @@ public class SearchGroup {
         lnum = pos.lnum;
       }
 
-      int lcount = EditorHelper.getLineCount(editor);
+      int lcount = lineCount;
       for (loop = 0; loop <= 1; ++loop)   /* loop twice if 'wrapscan' set */ {
         if (!wholeFile) {
-          startLine = lnum;
+          firstLine = lnum;
           endLine = lnum + 1;
         }
-        for (; lnum >= startLine && lnum < endLine; lnum += dir, at_first_line = false) {
-          /*
-          * Look for a match somewhere in the line.
-          */
+        for (; lnum >= firstLine && lnum < endLine; lnum += dir, at_first_line = false) {
+          if (limit != null && limit.isReached()) {
+            return null;
+          }
+          if (dir == 1) {
+            /* Look for the next line with a match, but not past the start in the second loop. */
+            final int last = loop != 0 ? Math.min(endLine, start_pos.lnum + 1) : endLine;
+            nmatched = sp.vim_regexec_nextmatch(regmatch, index, lcount, lnum, 0, last, limit);
+            if (nmatched == 0) {
+              searched += last - lnum;
+              lnum = last;
+              break;
+            }
+            if (regmatch.rmm_lnum != lnum) {
+              searched += regmatch.rmm_lnum - lnum;
+              lnum = regmatch.rmm_lnum;
+              at_first_line = false;
+            }
+          }
+          else {
+            /*
+            * Look for a match somewhere in the line.
+            */
+            nmatched = sp.vim_regexec_multi(regmatch, index, lcount, lnum, 0, limit);
+          }
+          if (indicator != null && ++searched - reported >= PROGRESS_LINES) {
+            if (indicator.isCanceled()) {
+              return null;
+            }
+            reported = searched;
+            indicator.setFraction(Math.min(1.0, (double)searched / lineCount));
+          }
           first_lnum = lnum;
-          nmatched = sp.vim_regexec_multi(regmatch, editor, lcount, lnum, 0);
           if (nmatched > 0) {
             /* match may actually be in another line when using \zs */
             lnum += regmatch.startpos[0].lnum;
-            ptr = new CharPointer(EditorHelper.getLineBuffer(editor, lnum));
+            ptr = new CharPointer(index.getLineBuffer(lnum));
             startcol = regmatch.startpos[0].col;
             endpos = regmatch.endpos[0];
 
@@ -895,7 +1481,7 @@ public class SearchGroup {
                   ++matchcol;
                 }
                 if (ptr.charAt(matchcol) == '\u0000' ||
-                    (nmatched = sp.vim_regexec_multi(regmatch, editor, lcount, lnum, matchcol)) == 0) {
+                    (nmatched = sp.vim_regexec_multi(regmatch, index, lcount, lnum, matchcol, limit)) == 0) {
                   match_ok = false;
                   break;
                 }
@@ -904,7 +1490,7 @@ public class SearchGroup {
 
                 /* Need to get the line pointer again, a
         * multi-line search may have made it invalid. */
-                ptr = new CharPointer(EditorHelper.getLineBuffer(editor, lnum));
+                ptr = new CharPointer(index.getLineBuffer(lnum));
               }
               if (!match_ok) {
                 continue;
@@ -947,13 +1533,13 @@ public class SearchGroup {
                   ++matchcol;
                 }
                 if (ptr.charAt(matchcol) == '\u0000' ||
-                    (nmatched = sp.vim_regexec_multi(regmatch, editor, lcount, lnum, matchcol)) == 0) {
+                    (nmatched = sp.vim_regexec_multi(regmatch, index, lcount, lnum, matchcol, limit)) == 0) {
                   break;
                 }
 
                 /* Need to get the line pointer again, a
         * multi-line search may have made it invalid. */
-                ptr = new CharPointer(EditorHelper.getLineBuffer(editor, lnum));
+                ptr = new CharPointer(index.getLineBuffer(lnum));
               }
 
               /*
@@ -1017,27 +1603,19 @@ public class SearchGroup {
     while (--count > 0 && found != 0);   /* stop after count matches or no match */
 
     if (found == 0)             /* did not find it */ {
-      //if ((options & SEARCH_MSG) == SEARCH_MSG)
-      if (showMessages) {
-        if (wrap) {
-          VimPlugin.showMessage(MessageHelper.message(Msg.e_patnotf2, lastSearch));
-        }
-        else if (lnum <= 0) {
-          VimPlugin.showMessage(MessageHelper.message(Msg.E384, lastSearch));
-        }
-        else {
-          VimPlugin.showMessage(MessageHelper.message(Msg.E385, lastSearch));
-        }
-      }
       return null;
     }
 
-    //return new TextRange(editor.logicalPositionToOffset(new LogicalPosition(pos.lnum, pos.col)),
-    //    editor.logicalPositionToOffset(new LogicalPosition(endpos.lnum, endpos.col)));
-    //return new TextRange(editor.logicalPositionToOffset(new LogicalPosition(pos.lnum, 0)) + pos.col,
-    //    editor.logicalPositionToOffset(new LogicalPosition(endpos.lnum, 0)) + endpos.col);
-    return new TextRange(EditorHelper.characterPositionToOffset(editor, new CharacterPosition(pos.lnum, pos.col)),
-                         EditorHelper.characterPositionToOffset(editor, new CharacterPosition(endpos.lnum, endpos.col)));
+    return new TextRange(characterPositionToOffset(index, pos.lnum, pos.col),
+                         characterPositionToOffset(index, endpos.lnum, endpos.col));
+  }
+
+  private static int characterPositionToOffset(@NotNull LineIndex index, int line, int col) {
+    final int lineCount = index.getLineCount();
+    if (lineCount == 0) {
+      return col;
+    }
+    return index.getLineStartOffset(Math.max(0, Math.min(line, lineCount - 1))) + col;
   }
 
   @NotNull
@@ -1076,7 +1654,9 @@ public class SearchGroup {
     ehl.clear();
 
     EditorData.setLastHighlights(editor, null);
+    EditorData.setHighlightedLines(editor, null);
     EditorData.setLastSearch(editor, null);
+    EditorData.setLastSearchIgnoreCase(editor, false);
   }
 
   public void saveData(@NotNull Element element) {
@@ -1176,6 +1756,211 @@ public class SearchGroup {
     }
   }
 
+  /**
+   * Searches a snapshot of the document outside of the event dispatch thread and moves the caret to the match once
+   * the search finishes, unless it was canceled or the document has been changed in the meantime.
+   */
+  private class BackgroundSearch extends Task.Backgroundable {
+    public BackgroundSearch(@NotNull Editor editor, @NotNull RegExp.regmmatch_T regmatch, int startOffset, int count,
+                            int dir, boolean wrap) {
+      super(editor.getProject(), "Searching for " + lastSearch, true);
+      this.editor = editor;
+      this.regmatch = regmatch;
+      this.pattern = lastSearch != null ? lastSearch : "";
+      this.count = count;
+      this.dir = dir;
+      this.wrap = wrap;
+      final Document document = editor.getDocument();
+      modificationStamp = document.getModificationStamp();
+      text = document.getImmutableCharSequence();
+      caretOffset = editor.getCaretModel().getOffset();
+      start = EditorHelper.offsetToCharacterPosition(editor, startOffset);
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+      this.indicator = indicator;
+      if (canceled) {
+        indicator.cancel();
+        return;
+      }
+      indicator.setIndeterminate(false);
+      final LineIndex index = LineIndex.forText(text, caretOffset);
+      range = findIt(index, regmatch, start.line, start.column, count, dir, wrap, true, indicator, limit);
+    }
+
+    @Override
+    public void onSuccess() {
+      if (backgroundSearch == this) {
+        backgroundSearch = null;
+      }
+      if (canceled || editor.isDisposed() || editor.getDocument().getModificationStamp() != modificationStamp) {
+        return;
+      }
+
+      final TextRange range = this.range;
+      final int res = range != null ? applySearchOffset(editor, range) : -1;
+      if (res < 0) {
+        if (range == null) {
+          showNotFoundMessage(pattern, dir, wrap);
+        }
+        VimPlugin.indicateError();
+        return;
+      }
+
+      VimPlugin.getMark().saveJumpLocation(editor);
+      MotionGroup.moveCaret(editor, EditorHelper.normalizeOffset(editor, res, false));
+    }
+
+    @Override
+    public void onCancel() {
+      if (backgroundSearch == this) {
+        backgroundSearch = null;
+      }
+    }
+
+    public void cancel() {
+      canceled = true;
+      limit.cancel();
+      final ProgressIndicator indicator = this.indicator;
+      if (indicator != null) {
+        indicator.cancel();
+      }
+    }
+
+    @NotNull private final Editor editor;
+    @NotNull private final RegExp.regmmatch_T regmatch;
+    @NotNull private final String pattern;
+    private final int count;
+    private final int dir;
+    private final boolean wrap;
+    private final long modificationStamp;
+    @NotNull private final CharSequence text;
+    private final int caretOffset;
+    @NotNull private final CharacterPosition start;
+    @Nullable private volatile TextRange range;
+    @Nullable private volatile ProgressIndicator indicator;
+    @NotNull private final MatchLimit limit = new MatchLimit(0);
+    private volatile boolean canceled = false;
+  }
+
+  /**
+   * The limit of a search run in the event dispatch thread. Besides reaching its time limit the search is given up
+   * when Esc is waiting in the event queue.
+   */
+  private static class SearchLimit extends MatchLimit {
+    public SearchLimit(long millis) {
+      super(millis);
+    }
+
+    @Override
+    public boolean isReached() {
+      if (reached) {
+        return true;
+      }
+      if (super.isReached()) {
+        reached = true;
+        return true;
+      }
+      final long now = System.nanoTime();
+      if (now - lastKeyCheck >= KEY_CHECK_NANOS && SwingUtilities.isEventDispatchThread()) {
+        lastKeyCheck = now;
+        final AWTEvent event = Toolkit.getDefaultToolkit().getSystemEventQueue().peekEvent(KeyEvent.KEY_PRESSED);
+        if (event instanceof KeyEvent && ((KeyEvent)event).getKeyCode() == KeyEvent.VK_ESCAPE) {
+          interrupted = true;
+          reached = true;
+        }
+      }
+      return reached;
+    }
+
+    public boolean isTimedOut() {
+      return reached && !interrupted;
+    }
+
+    public boolean isInterrupted() {
+      return interrupted;
+    }
+
+    private static final long KEY_CHECK_NANOS = 50000000;
+
+    private long lastKeyCheck = System.nanoTime();
+    private boolean reached = false;
+    private boolean interrupted = false;
+  }
+
+  public static class SearchVisibleAreaListener implements VisibleAreaListener {
+    public void visibleAreaChanged(@NotNull VisibleAreaEvent event) {
+      if (!VimPlugin.isEnabled()) {
+        return;
+      }
+
+      VimPlugin.getSearch().extendSearchHighlight(event.getEditor());
+    }
+  }
+
+  /**
+   * Moves the highlighted line flags after the changed line by the number of added or removed lines.
+   */
+  private static void shiftLines(@NotNull BitSet lines, int line, int delta) {
+    if (delta == 0) {
+      return;
+    }
+    final BitSet tail = lines.get(line + 1, Math.max(line + 1, lines.length()));
+    lines.clear(line + 1, Math.max(line + 1, lines.length()));
+    for (int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i + 1)) {
+      final int shifted = line + 1 + i + delta;
+      if (shifted > line) {
+        lines.set(shifted);
+      }
+    }
+  }
+
+  /**
+   * Maps the lines of a document before a substitution to the lines after it.
+   *
+   * The lines of the text after the last line of each replaced match are moved by the number of lines added or removed
+   * by the replacements up to and including that match. The lines that were joined by a replacement are mapped to the
+   * line where the match started.
+   */
+  private static class LineShifts implements Function<Integer, Integer> {
+    public void add(int startLine, int endLine, int delta) {
+      if (size == startLines.length) {
+        startLines = Arrays.copyOf(startLines, size * 2);
+        endLines = Arrays.copyOf(endLines, size * 2);
+        totalDeltas = Arrays.copyOf(totalDeltas, size * 2);
+      }
+      startLines[size] = startLine;
+      endLines[size] = endLine;
+      totalDeltas[size] = (size > 0 ? totalDeltas[size - 1] : 0) + delta;
+      size++;
+    }
+
+    @Override
+    public Integer fun(Integer line) {
+      // The number of matches that end before the line
+      int i = Arrays.binarySearch(endLines, 0, size, line);
+      if (i >= 0) {
+        while (i > 0 && endLines[i - 1] == line) {
+          i--;
+        }
+      }
+      else {
+        i = -i - 1;
+      }
+      final int before = i > 0 ? totalDeltas[i - 1] : 0;
+      if (i < size && startLines[i] < line) {
+        return startLines[i] + before;
+      }
+      return line + before;
+    }
+
+    @NotNull private int[] startLines = new int[16];
+    @NotNull private int[] endLines = new int[16];
+    @NotNull private int[] totalDeltas = new int[16];
+    private int size = 0;
+  }
+
   public static class DocumentSearchListener extends DocumentAdapter {
     public void documentChanged(@NotNull DocumentEvent event) {
       if (!VimPlugin.isEnabled()) {
@@ -1209,6 +1994,15 @@ public class SearchGroup {
 
           int sl = editor.offsetToLogicalPosition(soff).line;
           int el = editor.offsetToLogicalPosition(eoff).line;
+          final BitSet highlighted = EditorData.getHighlightedLines(editor);
+          if (highlighted != null) {
+            shiftLines(highlighted, sl, StringUtil.countNewLines(event.getNewFragment()) -
+                                        StringUtil.countNewLines(event.getOldFragment()));
+            if (highlighted.nextSetBit(sl) == -1 || highlighted.nextSetBit(sl) > el) {
+              continue;
+            }
+            highlighted.set(sl, el + 1);
+          }
           VimPlugin.getSearch().highlightSearchLines(editor, false, sl, el);
           hls = EditorData.getLastHighlights(editor);
           if (logger.isDebugEnabled()) {
@@ -1229,12 +2023,35 @@ public class SearchGroup {
   private JButton[] confirmBtns;
   @Nullable private JOptionPane confirmDlg = null;
   private boolean showSearchHighlight = Options.getInstance().isSet("hlsearch");
+  @NotNull private final VisibleAreaListener visibleAreaListener = new SearchVisibleAreaListener();
+  @Nullable private BackgroundSearch backgroundSearch = null;
+  private static boolean backgroundSearchInTests = false;
 
   private boolean do_all = false; /* do multiple substitutions per line */
   private boolean do_ask = false; /* ask for confirmation */
   private boolean do_error = true; /* if false, ignore errors */
   //private boolean do_print = false; /* print last line with subs. */
   private char do_ic = 0; /* ignore case flag */
+  private int sub_nsubs; /* number of substitutions */
+  private int sub_nlines; /* number of lines changed */
+
+  /**
+   * The number of lines above and below the visible area that are highlighted in advance
+   */
+  private static final int HIGHLIGHT_MARGIN = 100;
+  private static final int MAX_HIGHLIGHTERS = 10000;
+  private static final int MAX_STRIPE_MARKERS = 5000;
+
+  /**
+   * Returned instead of an offset when the search is continued in the background
+   */
+  public static final int BACKGROUND_SEARCH = -2;
+  /**
+   * The number of lines starting from which searches for typed commands are run in the background
+   */
+  private static final int BACKGROUND_SEARCH_LINES = 100000;
+  private static final int PROGRESS_LINES = 1000;
+  private static final int SEARCH_TIMEOUT_FACTOR = 5;
 
   private static final int RE_LAST = 1;
   private static final int RE_SEARCH = 2;
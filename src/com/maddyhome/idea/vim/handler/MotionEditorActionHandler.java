@@ -34,7 +34,7 @@ public abstract class MotionEditorActionHandler extends EditorActionHandlerBase
   protected final boolean execute(@NotNull Editor editor, @NotNull DataContext context, @NotNull Command cmd) {
     preMove(editor, context, cmd);
 
-    int offset = getOffset(editor, context, cmd.getCount(), cmd.getRawCount(), cmd.getArgument());
+    int offset = getMoveOffset(editor, context, cmd.getCount(), cmd.getRawCount(), cmd.getArgument());
     if (offset == -1) {
       return false;
     }
@@ -58,6 +58,14 @@ public abstract class MotionEditorActionHandler extends EditorActionHandlerBase
 
   public abstract int getOffset(Editor editor, DataContext context, int count, int rawCount, Argument argument);
 
+  /**
+   * Gets the offset the caret is moved to when the motion is executed on its own rather than as the argument of an
+   * operator. A negative offset other than -1 means that the motion will move the caret later by itself.
+   */
+  protected int getMoveOffset(Editor editor, DataContext context, int count, int rawCount, Argument argument) {
+    return getOffset(editor, context, count, rawCount, argument);
+  }
+
   protected void preMove(Editor editor, DataContext context, Command cmd) {
   }
 
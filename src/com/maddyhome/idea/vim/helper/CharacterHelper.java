@@ -38,6 +38,13 @@ public class CharacterHelper {
   public static final char CASE_UPPER = 'u';
   public static final char CASE_LOWER = 'l';
 
+  @NotNull private static final CharacterType[] TYPES = CharacterType.values();
+  /**
+   * The types of all the characters of the Basic Multilingual Plane, computed once instead of looking up the Unicode
+   * block of each character examined by the word motions
+   */
+  @NotNull private static final byte[] CHAR_TYPES = createCharTypes();
+
   /**
    * This returns the type of the supplied character. The logic is as follows:<br>
    * If the character is whitespace, <code>WHITESPACE</code> is returned.<br>
@@ -51,6 +58,12 @@ public class CharacterHelper {
    */
   @NotNull
   public static CharacterType charType(char ch, boolean punctuationAsLetters) {
+    final CharacterType type = TYPES[CHAR_TYPES[ch]];
+    return punctuationAsLetters && type == CharacterType.PUNCTUATION ? CharacterType.LETTER_OR_DIGIT : type;
+  }
+
+  @NotNull
+  private static CharacterType computeCharType(char ch) {
     final Character.UnicodeBlock block = Character.UnicodeBlock.of(ch);
     if (Character.isWhitespace(ch)) {
       return CharacterType.WHITESPACE;
@@ -64,7 +77,7 @@ public class CharacterHelper {
     else if (isHalfWidthKatakanaLetter(ch)) {
       return CharacterType.HALF_WIDTH_KATAKANA;
     }
-    else if (punctuationAsLetters || Character.isLetterOrDigit(ch) || ch == '_') {
+    else if (Character.isLetterOrDigit(ch) || ch == '_') {
       return CharacterType.LETTER_OR_DIGIT;
     }
     else {
@@ -72,6 +85,15 @@ public class CharacterHelper {
     }
   }
 
+  @NotNull
+  private static byte[] createCharTypes() {
+    final byte[] types = new byte[Character.MAX_VALUE + 1];
+    for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+      types[ch] = (byte)computeCharType((char)ch).ordinal();
+    }
+    return types;
+  }
+
   private static boolean isHalfWidthKatakanaLetter(char ch) {
     return ch >= '\uFF66' && ch <= '\uFF9F';
   }
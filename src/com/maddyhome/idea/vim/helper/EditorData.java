@@ -37,6 +37,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Field;
+import java.util.BitSet;
 import java.util.Collection;
 
 /**
@@ -63,6 +64,7 @@ public class EditorData {
     if (logger.isDebugEnabled()) logger.debug("editor closed: " + editor);
     editor.putUserData(COMMAND_STATE, null);
     editor.putUserData(LAST_HIGHLIGHTS, null);
+    editor.putUserData(HIGHLIGHTED_LINES, null);
     editor.putUserData(LAST_SELECTION_TYPE, null);
     editor.putUserData(LAST_VISUAL_RANGE, null);
     editor.putUserData(VISUAL_OP, null);
@@ -123,6 +125,29 @@ public class EditorData {
     editor.putUserData(LAST_HIGHLIGHTS, highlights);
   }
 
+  /**
+   * Gets whether the case was ignored when the last search highlight of the editor was created.
+   */
+  public static boolean getLastSearchIgnoreCase(@NotNull Editor editor) {
+    return editor.getUserData(LAST_SEARCH_IGNORE_CASE) == Boolean.TRUE;
+  }
+
+  public static void setLastSearchIgnoreCase(@NotNull Editor editor, boolean ignoreCase) {
+    editor.putUserData(LAST_SEARCH_IGNORE_CASE, ignoreCase);
+  }
+
+  /**
+   * Gets the lines of the editor that have already been searched for the highlighted matches.
+   */
+  @Nullable
+  public static BitSet getHighlightedLines(@NotNull Editor editor) {
+    return editor.getUserData(HIGHLIGHTED_LINES);
+  }
+
+  public static void setHighlightedLines(@NotNull Editor editor, @Nullable BitSet lines) {
+    editor.putUserData(HIGHLIGHTED_LINES, lines);
+  }
+
   /***
    * @see :help visualmode()
    */
@@ -196,6 +221,14 @@ public class EditorData {
     editor.putUserData(MOTION_GROUP, adapter);
   }
 
+  public static boolean getSearchGroup(@NotNull Editor editor) {
+    return editor.getUserData(SEARCH_GROUP) == Boolean.TRUE;
+  }
+
+  public static void setSearchGroup(@NotNull Editor editor, boolean adapter) {
+    editor.putUserData(SEARCH_GROUP, adapter);
+  }
+
   public static boolean getEditorGroup(@NotNull Editor editor) {
     return editor.getUserData(EDITOR_GROUP) == Boolean.TRUE;
   }
@@ -260,9 +293,12 @@ public class EditorData {
   private static final Key<VisualChange> VISUAL_OP = new Key<VisualChange>("lastVisualOp");
   private static final Key<String> LAST_SEARCH = new Key<String>("lastSearch");
   private static final Key<Collection<RangeHighlighter>> LAST_HIGHLIGHTS = new Key<Collection<RangeHighlighter>>("lastHighlights");
+  private static final Key<BitSet> HIGHLIGHTED_LINES = new Key<BitSet>("highlightedLines");
+  private static final Key<Boolean> LAST_SEARCH_IGNORE_CASE = new Key<Boolean>("lastSearchIgnoreCase");
   private static final Key<CommandState> COMMAND_STATE = new Key<CommandState>("commandState");
   private static final Key<Boolean> CHANGE_GROUP = new Key<Boolean>("changeGroup");
   private static final Key<Boolean> MOTION_GROUP = new Key<Boolean>("motionGroup");
+  private static final Key<Boolean> SEARCH_GROUP = new Key<Boolean>("searchGroup");
   public static final Key<Boolean> EDITOR_GROUP = new Key<Boolean>("editorGroup");
   public static final Key<Boolean> LINE_NUMBERS_SHOWN = new Key<Boolean>("lineNumbersShown");
   private static final Key<ExOutputPanel> MORE_PANEL = new Key<ExOutputPanel>("IdeaVim.morePanel");
@@ -0,0 +1,94 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2014 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.maddyhome.idea.vim.helper;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A histogram of durations with buckets for the powers of two of nanoseconds.
+ *
+ * Adding a duration doesn't allocate anything, so it can be done for every keystroke. The percentiles are precise up
+ * to the factor of two of the bucket size.
+ */
+public class LatencyHistogram {
+  public synchronized void add(long nanos) {
+    counts[bucket(nanos)]++;
+    count++;
+    total += nanos;
+    if (nanos > max) {
+      max = nanos;
+    }
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getTotal() {
+    return total;
+  }
+
+  public synchronized long getMax() {
+    return max;
+  }
+
+  /**
+   * Returns the upper bound of the bucket that contains the given percentile of the durations, 0 if there are none.
+   */
+  public synchronized long getPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long)Math.ceil(count * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1, max);
+      }
+    }
+    return max;
+  }
+
+  public synchronized void clear() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = 0;
+    }
+    count = 0;
+    total = 0;
+    max = 0;
+  }
+
+  @NotNull
+  @Override
+  public synchronized String toString() {
+    return "count=" + count + ", p50=" + getPercentile(50) + "ns, p90=" + getPercentile(90) + "ns, p99=" +
+           getPercentile(99) + "ns, max=" + max + "ns";
+  }
+
+  private static int bucket(long nanos) {
+    return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+  }
+
+  private static final int BUCKETS = 64;
+
+  @NotNull private final long[] counts = new long[BUCKETS];
+  private long count = 0;
+  private long total = 0;
+  private long max = 0;
+}
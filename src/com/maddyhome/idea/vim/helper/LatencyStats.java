@@ -0,0 +1,235 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2014 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.maddyhome.idea.vim.helper;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opt-in timing of the steps between a keystroke and the update of the editor, see :vimstats.
+ *
+ * A step is timed by a sample started by {@link #start(String)} and stopped by {@link #stop(Sample)}. While the stats
+ * are disabled, starting a sample only checks a flag and returns null. For every step name the stats keep a histogram
+ * of the durations and the number of bytes allocated by the thread. The samples may be nested, a sample includes the
+ * time of the samples started within it.
+ *
+ * A step run in the event dispatch thread blocks the painting of the editor once it takes longer than a frame. The
+ * stats sum up the time beyond {@link #FRAME_BUDGET_NANOS} of these samples, so the steps that make typing stutter
+ * stand out from the ones that are merely frequent.
+ */
+public class LatencyStats {
+  /**
+   * The time a step may take in the event dispatch thread before it delays the next frame at 60 frames per second.
+   */
+  public static final long FRAME_BUDGET_NANOS = 16000000;
+
+  private LatencyStats() {
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    LatencyStats.enabled = enabled;
+  }
+
+  public static synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Starts timing the step, returns null if the stats are disabled.
+   */
+  @Nullable
+  public static Sample start(@NotNull String name) {
+    return enabled ? new Sample(name) : null;
+  }
+
+  public static void stop(@Nullable Sample sample) {
+    if (sample != null) {
+      sample.stop();
+    }
+  }
+
+  /**
+   * Returns the stats as a table sorted by the total time of the steps.
+   */
+  @NotNull
+  public static synchronized String format() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(StringHelper.leftJustify("step", 40, ' '));
+    builder.append(StringHelper.rightJustify("count", 9, ' '));
+    builder.append(StringHelper.rightJustify("p50 us", 10, ' '));
+    builder.append(StringHelper.rightJustify("p90 us", 10, ' '));
+    builder.append(StringHelper.rightJustify("p99 us", 10, ' '));
+    builder.append(StringHelper.rightJustify("max us", 10, ' '));
+    builder.append(StringHelper.rightJustify("alloc KB", 10, ' '));
+    builder.append(StringHelper.rightJustify("blocked ms", 12, ' '));
+    builder.append('\n');
+    for (Entry entry : getSortedEntries()) {
+      final LatencyHistogram latency = entry.latency;
+      builder.append(StringHelper.leftJustify(entry.name, 40, ' '));
+      builder.append(StringHelper.rightJustify(Long.toString(latency.getCount()), 9, ' '));
+      builder.append(StringHelper.rightJustify(Long.toString(latency.getPercentile(50) / 1000), 10, ' '));
+      builder.append(StringHelper.rightJustify(Long.toString(latency.getPercentile(90) / 1000), 10, ' '));
+      builder.append(StringHelper.rightJustify(Long.toString(latency.getPercentile(99) / 1000), 10, ' '));
+      builder.append(StringHelper.rightJustify(Long.toString(latency.getMax() / 1000), 10, ' '));
+      builder.append(StringHelper.rightJustify(entry.allocated >= 0 ? Long.toString(entry.allocated / 1024) : "-", 10,
+                                               ' '));
+      builder.append(StringHelper.rightJustify(Long.toString(entry.blockedNanos / 1000000), 12, ' '));
+      builder.append('\n');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Returns the stats as a JSON object, the durations are in nanoseconds. The blocked time of a step is its time in the
+   * event dispatch thread beyond the frame budget.
+   */
+  @NotNull
+  public static synchronized String toJson() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("{\n  \"enabled\": ").append(enabled).append(",\n  \"steps\": [");
+    boolean first = true;
+    for (Entry entry : getSortedEntries()) {
+      final LatencyHistogram latency = entry.latency;
+      builder.append(first ? "\n" : ",\n");
+      builder.append("    {\"name\": ");
+      appendJsonString(builder, entry.name);
+      builder.append(", \"count\": ").append(latency.getCount());
+      builder.append(", \"totalNanos\": ").append(latency.getTotal());
+      builder.append(", \"p50Nanos\": ").append(latency.getPercentile(50));
+      builder.append(", \"p90Nanos\": ").append(latency.getPercentile(90));
+      builder.append(", \"p99Nanos\": ").append(latency.getPercentile(99));
+      builder.append(", \"maxNanos\": ").append(latency.getMax());
+      builder.append(", \"allocatedBytes\": ").append(entry.allocated);
+      builder.append(", \"blockedNanos\": ").append(entry.blockedNanos);
+      builder.append("}");
+      first = false;
+    }
+    builder.append(first ? "]\n}\n" : "\n  ]\n}\n");
+    return builder.toString();
+  }
+
+  @NotNull
+  private static List<Entry> getSortedEntries() {
+    final List<Entry> res = new ArrayList<Entry>(entries.values());
+    Collections.sort(res);
+    return res;
+  }
+
+  private static void appendJsonString(@NotNull StringBuilder builder, @NotNull String s) {
+    builder.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      }
+      else if (c < ' ') {
+        builder.append(String.format("\\u%04x", (int)c));
+      }
+      else {
+        builder.append(c);
+      }
+    }
+    builder.append('"');
+  }
+
+  private static synchronized void add(@NotNull String name, long nanos, long allocated, long blocked) {
+    Entry entry = entries.get(name);
+    if (entry == null) {
+      entry = new Entry(name);
+      entries.put(name, entry);
+    }
+    entry.latency.add(nanos);
+    if (allocated < 0) {
+      entry.allocated = -1;
+    }
+    else if (entry.allocated >= 0) {
+      entry.allocated += allocated;
+    }
+    entry.blockedNanos += blocked;
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread so far or -1 if the JVM doesn't count them.
+   */
+  private static long getAllocatedBytes() {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+      if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * A step being timed.
+   */
+  public static class Sample {
+    private Sample(@NotNull String name) {
+      this.name = name;
+      allocated = getAllocatedBytes();
+      start = System.nanoTime();
+    }
+
+    private void stop() {
+      final long nanos = System.nanoTime() - start;
+      final long allocatedNow = getAllocatedBytes();
+      final long blocked = SwingUtilities.isEventDispatchThread() ? Math.max(0, nanos - FRAME_BUDGET_NANOS) : 0;
+      add(name, nanos, allocated >= 0 && allocatedNow >= 0 ? allocatedNow - allocated : -1, blocked);
+    }
+
+    @NotNull private final String name;
+    private final long allocated;
+    private final long start;
+  }
+
+  private static class Entry implements Comparable<Entry> {
+    public Entry(@NotNull String name) {
+      this.name = name;
+    }
+
+    @Override
+    public int compareTo(@NotNull Entry other) {
+      final long total = latency.getTotal();
+      final long otherTotal = other.latency.getTotal();
+      return total > otherTotal ? -1 : total < otherTotal ? 1 : name.compareTo(other.name);
+    }
+
+    @NotNull private final String name;
+    @NotNull private final LatencyHistogram latency = new LatencyHistogram();
+    private long allocated = 0;
+    private long blockedNanos = 0;
+  }
+
+  @NotNull private static final Map<String, Entry> entries = new HashMap<String, Entry>();
+  private static volatile boolean enabled = false;
+}
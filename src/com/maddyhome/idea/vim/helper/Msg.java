@@ -28,6 +28,7 @@ public interface Msg {
   String e_argreq = "e_argreq";
   String e_noprev = "e_noprev";
   String e_nopresub = "e_nopresub";
+  String e_noprevre = "e_noprevre";
   String E191 = "E191";
   String e_backrange = "e_backrange";
   String E146 = "E146";
@@ -68,6 +69,14 @@ public interface Msg {
   String E384 = "E384";
   String E385 = "E385";
   String e_patnotf2 = "e_patnotf2";
+  String e_searchtimeout = "e_searchtimeout";
+  String e_searchinterrupted = "e_searchinterrupted";
+  String e_nfaunsupported = "e_nfaunsupported";
+  String e_patfoundall = "e_patfoundall";
+  String E147 = "E147";
+  String nsubs = "nsubs";
   String unkopt = "unkopt";
   String e_invarg = "e_invarg";
+  String shell_returned = "shell_returned";
+  String shell_returned_error = "shell_returned_error";
 }
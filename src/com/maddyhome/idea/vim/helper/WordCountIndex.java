@@ -0,0 +1,267 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2014 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.maddyhome.idea.vim.helper;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentAdapter;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The number of WORDs of a document, see g CTRL-G.
+ *
+ * The document is split into blocks of whole lines. The number of characters and the number of WORD starts of the
+ * blocks are kept in Fenwick trees, so the WORDs before an offset are counted in O(log n) plus a scan of the part of a
+ * single block before the offset. A document change rescans only the blocks it touches.
+ *
+ * The index is created on the first request for the document and then kept up to date by {@link DocumentUpdater}. If
+ * the document was changed without the index seeing it, the index is rebuilt.
+ */
+public class WordCountIndex {
+  @NotNull
+  public static WordCountIndex getInstance(@NotNull Document doc) {
+    WordCountIndex index = doc.getUserData(WORD_COUNT_INDEX);
+    if (index == null) {
+      index = new WordCountIndex();
+      doc.putUserData(WORD_COUNT_INDEX, index);
+    }
+    if (index.stamp != doc.getModificationStamp() || index.getLength() != doc.getTextLength()) {
+      index.build(doc.getCharsSequence());
+      index.stamp = doc.getModificationStamp();
+    }
+    return index;
+  }
+
+  /**
+   * Returns the number of WORDs in the document.
+   */
+  public int getCount() {
+    return prefix(wordTree, size);
+  }
+
+  /**
+   * Returns the number of WORDs that start before the offset.
+   */
+  public int countBefore(@NotNull CharSequence text, int offset) {
+    if (offset <= 0) {
+      return 0;
+    }
+    final int block = findBlock(offset);
+    final int start = prefix(lengthTree, block);
+    return prefix(wordTree, block) + countStarts(text, start, Math.min(offset, text.length()));
+  }
+
+  /**
+   * Returns the number of WORDs with characters between the offsets. A WORD that starts before the start offset is
+   * counted too.
+   */
+  public int count(@NotNull CharSequence text, int start, int end) {
+    if (start >= end) {
+      return 0;
+    }
+    int res = countBefore(text, end) - countBefore(text, start);
+    if (start > 0 && !isWhite(text.charAt(start)) && !isWhite(text.charAt(start - 1))) {
+      res++;
+    }
+    return res;
+  }
+
+  private int getLength() {
+    return prefix(lengthTree, size);
+  }
+
+  private void build(@NotNull CharSequence text) {
+    size = 0;
+    addBlocks(text, 0, text.length());
+    if (size == 0) {
+      addBlock(0, 0);
+    }
+    buildTrees();
+  }
+
+  /**
+   * Rescans the blocks changed by the event. The blocks from the one with the start of the change to the one with the
+   * end of the replaced text are replaced by the blocks of the same lines in the new text.
+   */
+  private void update(@NotNull CharSequence text, int offset, int oldLength, int newLength) {
+    final int first = findBlock(offset);
+    final int last = findBlock(offset + oldLength);
+    final int start = prefix(lengthTree, first);
+    final int end = prefix(lengthTree, last + 1) + newLength - oldLength;
+
+    final int[] tailLengths = Arrays.copyOfRange(lengths, last + 1, size);
+    final int[] tailWords = Arrays.copyOfRange(words, last + 1, size);
+    final int oldSize = size;
+    final int firstLength = lengths[first];
+    final int firstWords = words[first];
+    size = first;
+    addBlocks(text, start, end);
+    if (size == first) {
+      addBlock(0, 0);
+    }
+
+    if (size == first + 1 && first == last) {
+      size = oldSize;
+      add(lengthTree, first, lengths[first] - firstLength);
+      add(wordTree, first, words[first] - firstWords);
+    }
+    else {
+      for (int i = 0; i < tailLengths.length; i++) {
+        addBlock(tailLengths[i], tailWords[i]);
+      }
+      buildTrees();
+    }
+  }
+
+  /**
+   * Adds the blocks of lines of the text between the offsets, the start offset has to be at the start of a line.
+   */
+  private void addBlocks(@NotNull CharSequence text, int start, int end) {
+    int blockStart = start;
+    int lines = 0;
+    int count = 0;
+    boolean white = true;
+    for (int i = start; i < end; i++) {
+      final char c = text.charAt(i);
+      final boolean isWhite = isWhite(c);
+      if (white && !isWhite) {
+        count++;
+      }
+      white = isWhite;
+      if (c == '\n' && ++lines == BLOCK_LINES) {
+        addBlock(i + 1 - blockStart, count);
+        blockStart = i + 1;
+        lines = 0;
+        count = 0;
+      }
+    }
+    if (blockStart < end) {
+      addBlock(end - blockStart, count);
+    }
+  }
+
+  private void addBlock(int length, int count) {
+    if (size == lengths.length) {
+      lengths = Arrays.copyOf(lengths, size * 2);
+      words = Arrays.copyOf(words, size * 2);
+    }
+    lengths[size] = length;
+    words[size] = count;
+    size++;
+  }
+
+  private void buildTrees() {
+    lengthTree = buildTree(lengths, size);
+    wordTree = buildTree(words, size);
+  }
+
+  /**
+   * Returns the block that contains the offset, the last block for the end of the document.
+   */
+  private int findBlock(int offset) {
+    int pos = 0;
+    for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+      if (pos + step <= size && lengthTree[pos + step] <= offset) {
+        pos += step;
+        offset -= lengthTree[pos];
+      }
+    }
+    return Math.min(pos, size - 1);
+  }
+
+  private static int countStarts(@NotNull CharSequence text, int start, int end) {
+    int count = 0;
+    boolean white = start == 0 || isWhite(text.charAt(start - 1));
+    for (int i = start; i < end; i++) {
+      final boolean isWhite = isWhite(text.charAt(i));
+      if (white && !isWhite) {
+        count++;
+      }
+      white = isWhite;
+    }
+    return count;
+  }
+
+  private static boolean isWhite(char c) {
+    return CharacterHelper.charType(c, true) == CharacterHelper.CharacterType.WHITESPACE;
+  }
+
+  @NotNull
+  private static int[] buildTree(@NotNull int[] values, int size) {
+    final int[] tree = new int[size + 1];
+    for (int i = 1; i <= size; i++) {
+      tree[i] += values[i - 1];
+      final int j = i + (i & -i);
+      if (j <= size) {
+        tree[j] += tree[i];
+      }
+    }
+    return tree;
+  }
+
+  private static int prefix(@NotNull int[] tree, int count) {
+    int res = 0;
+    for (int i = count; i > 0; i -= i & -i) {
+      res += tree[i];
+    }
+    return res;
+  }
+
+  private void add(@NotNull int[] tree, int index, int delta) {
+    if (delta == 0) {
+      return;
+    }
+    for (int i = index + 1; i <= size; i += i & -i) {
+      tree[i] += delta;
+    }
+  }
+
+  /**
+   * Updates the indexes of the changed documents
+   */
+  public static class DocumentUpdater extends DocumentAdapter {
+    public void documentChanged(@NotNull DocumentEvent event) {
+      final Document doc = event.getDocument();
+      final WordCountIndex index = doc.getUserData(WORD_COUNT_INDEX);
+      if (index == null) {
+        return;
+      }
+      if (index.getLength() != doc.getTextLength() - event.getNewLength() + event.getOldLength()) {
+        doc.putUserData(WORD_COUNT_INDEX, null);
+        return;
+      }
+      index.update(doc.getCharsSequence(), event.getOffset(), event.getOldLength(), event.getNewLength());
+      index.stamp = doc.getModificationStamp();
+    }
+  }
+
+  private static final int BLOCK_LINES = 64;
+
+  private static final Key<WordCountIndex> WORD_COUNT_INDEX = new Key<WordCountIndex>("wordCountIndex");
+
+  @NotNull private int[] lengths = new int[16];
+  @NotNull private int[] words = new int[16];
+  @NotNull private int[] lengthTree = new int[1];
+  @NotNull private int[] wordTree = new int[1];
+  private int size = 0;
+  private long stamp = -1;
+}
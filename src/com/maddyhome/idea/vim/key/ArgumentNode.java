@@ -18,10 +18,12 @@
 
 package com.maddyhome.idea.vim.key;
 
+import com.intellij.openapi.actionSystem.ActionManager;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.maddyhome.idea.vim.command.Argument;
 import com.maddyhome.idea.vim.command.Command;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This represents a command argument node in the key/action tree. Currently arguments of argType character
@@ -29,18 +31,15 @@ import org.jetbrains.annotations.NotNull;
  */
 public class ArgumentNode implements Node {
   /**
-   * Creates a node for the given action.
+   * Creates a node for the given action. The action is looked up by its id when it is first needed.
    *
    * @param actionId The id of the action.
-   * @param action   The action this arguments is mapped to.
    * @param cmdType  The type of the command this argument is for.
    * @param argType  The type of the argument.
    * @param flags    Any special flags associated with this argument.
    */
-  public ArgumentNode(String actionId, AnAction action, @NotNull Command.Type cmdType, @NotNull Argument.Type argType,
-                      int flags) {
+  public ArgumentNode(String actionId, @NotNull Command.Type cmdType, @NotNull Argument.Type argType, int flags) {
     this.actionId = actionId;
-    this.action = action;
     this.argType = argType;
     this.cmdType = cmdType;
     this.flags = flags;
@@ -53,9 +52,13 @@ public class ArgumentNode implements Node {
   /**
    * Gets the action of the argument
    *
-   * @return The argument's action
+   * @return The argument's action or null if there is no action with this id
    */
+  @Nullable
   public AnAction getAction() {
+    if (action == null) {
+      action = ActionManager.getInstance().getAction(actionId);
+    }
     return action;
   }
 
@@ -94,8 +97,6 @@ public class ArgumentNode implements Node {
     return "ArgumentNode[" +
            "actionId=" +
            actionId +
-           ", action=" +
-           action +
            ", argType=" +
            argType +
            ", flags=" +
@@ -112,14 +113,12 @@ public class ArgumentNode implements Node {
     return argType == node.argType &&
            cmdType == node.cmdType &&
            flags == node.flags &&
-           actionId.equals(node.actionId) &&
-           action.equals(node.action);
+           actionId.equals(node.actionId);
   }
 
   public int hashCode() {
     int result;
-    result = action.hashCode();
-    result = 29 * result + actionId.hashCode();
+    result = actionId.hashCode();
     result = 29 * result + argType.ordinal();
     result = 29 * result + cmdType.hashCode();
     result = 29 * result + flags;
@@ -127,7 +126,7 @@ public class ArgumentNode implements Node {
   }
 
   protected final String actionId;
-  protected final AnAction action;
+  @Nullable protected AnAction action;
   @NotNull protected final Argument.Type argType;
   @NotNull protected final Command.Type cmdType;
   protected final int flags;
@@ -18,9 +18,11 @@
 
 package com.maddyhome.idea.vim.key;
 
+import com.intellij.openapi.actionSystem.ActionManager;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.maddyhome.idea.vim.command.Command;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 
@@ -29,18 +31,16 @@ import javax.swing.*;
  */
 public class CommandNode implements Node {
   /**
-   * Creates a command node for the key and action
+   * Creates a command node for the key and action. The action is looked up by its name when it is first needed.
    *
    * @param key     The final keystroke in this command
    * @param actName The name of the action
-   * @param action  The action that executes this command
    * @param cmdType The type of the command
    * @param flags   Any special flags needs by the command
    */
-  public CommandNode(KeyStroke key, String actName, AnAction action, @NotNull Command.Type cmdType, int flags) {
+  public CommandNode(KeyStroke key, String actName, @NotNull Command.Type cmdType, int flags) {
     this.key = key;
     this.actionId = actName;
-    this.action = action;
     this.type = cmdType;
     this.flags = flags;
   }
@@ -52,9 +52,13 @@ public class CommandNode implements Node {
   /**
    * Gets the command's action
    *
-   * @return The command's action
+   * @return The command's action or null if there is no action with this name
    */
+  @Nullable
   public AnAction getAction() {
+    if (action == null) {
+      action = ActionManager.getInstance().getAction(actionId);
+    }
     return action;
   }
 
@@ -89,7 +93,7 @@ public class CommandNode implements Node {
   @NotNull
   public String toString() {
 
-    return "CommandNode[key=" + key + ", actionId=" + actionId + ", action=" + action + ", argType=" + type + "]";
+    return "CommandNode[key=" + key + ", actionId=" + actionId + ", argType=" + type + "]";
   }
 
   public boolean equals(Object o) {
@@ -101,7 +105,6 @@ public class CommandNode implements Node {
     return flags == node.flags &&
            type == node.type &&
            actionId.equals(node.actionId) &&
-           action.equals(node.action) &&
            key.equals(node.key);
   }
 
@@ -109,14 +112,13 @@ public class CommandNode implements Node {
     int result;
     result = key.hashCode();
     result = 29 * result + actionId.hashCode();
-    result = 29 * result + action.hashCode();
     result = 29 * result + type.hashCode();
     result = 29 * result + flags;
     return result;
   }
 
   protected final KeyStroke key;
-  protected final AnAction action;
+  @Nullable protected AnAction action;
   protected final String actionId;
   @NotNull protected final Command.Type type;
   protected final int flags;
@@ -18,7 +18,6 @@
 
 package com.maddyhome.idea.vim.key;
 
-import com.google.common.collect.ImmutableList;
 import com.maddyhome.idea.vim.command.MappingMode;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -27,64 +26,140 @@ import javax.swing.*;
 import java.util.*;
 
 /**
+ * The key mappings of a mapping mode kept in a trie of keystrokes.
+ *
+ * A node is never removed from the trie once created, so a node returned by {@link #getRoot()} and
+ * {@link MappingNode#getChild(KeyStroke)} stays valid while mappings are added and deleted and the mappings can be resolved
+ * one keystroke at a time without any lookups of whole key lists.
+ *
  * @author vlan
  */
 public class KeyMapping implements Iterable<List<KeyStroke>> {
-  @NotNull private final Map<ImmutableList<KeyStroke>, MappingInfo> myKeys = new HashMap<ImmutableList<KeyStroke>, MappingInfo>();
-  @NotNull private final Map<ImmutableList<KeyStroke>, Integer> myPrefixes = new HashMap<ImmutableList<KeyStroke>, Integer>();
+  @NotNull private final MappingNode myRoot = new MappingNode();
 
   @NotNull
   @Override
   public Iterator<List<KeyStroke>> iterator() {
-    return new ArrayList<List<KeyStroke>>(myKeys.keySet()).iterator();
+    final List<List<KeyStroke>> keys = new ArrayList<List<KeyStroke>>();
+    myRoot.collectKeys(keys);
+    return keys.iterator();
+  }
+
+  @NotNull
+  public MappingNode getRoot() {
+    return myRoot;
+  }
+
+  /**
+   * Returns the node of the keys or null if there are no mappings starting with the keys.
+   */
+  @Nullable
+  public MappingNode find(@NotNull List<KeyStroke> keys) {
+    MappingNode node = myRoot;
+    for (int i = 0; i < keys.size() && node != null; i++) {
+      node = node.getChild(keys.get(i));
+    }
+    return node;
   }
 
   @Nullable
   public MappingInfo get(@NotNull List<KeyStroke> keys) {
-    return myKeys.get(ImmutableList.copyOf(keys));
+    final MappingNode node = find(keys);
+    return node != null ? node.getMappingInfo() : null;
   }
 
   public void put(@NotNull Set<MappingMode> mappingModes, @NotNull List<KeyStroke> fromKeys,
                   @NotNull List<KeyStroke> toKeys, boolean recursive) {
-    myKeys.put(ImmutableList.copyOf(fromKeys), new MappingInfo(mappingModes, fromKeys, toKeys, recursive));
-    List<KeyStroke> prefix = new ArrayList<KeyStroke>();
-    final int prefixLength = fromKeys.size() - 1;
-    for (int i = 0; i < prefixLength; i++) {
-      prefix.add(fromKeys.get(i));
-      increment(ImmutableList.copyOf(prefix));
+    if (fromKeys.isEmpty()) {
+      return;
+    }
+    MappingNode node = myRoot;
+    for (KeyStroke key : fromKeys) {
+      node = node.getOrCreateChild(key);
+    }
+    final boolean added = node.myMappingInfo == null;
+    node.myMappingInfo = new MappingInfo(mappingModes, fromKeys, toKeys, recursive);
+    if (added) {
+      updatePrefixes(fromKeys, 1);
     }
   }
 
   public void delete(@NotNull List<KeyStroke> keys) {
-    myKeys.remove(ImmutableList.copyOf(keys));
-    List<KeyStroke> prefix = new ArrayList<KeyStroke>();
-    final int prefixLength = keys.size() - 1;
-    for (int i = 0; i < prefixLength; i++) {
-      prefix.add(keys.get(i));
-      decrement(ImmutableList.copyOf(prefix));
+    final MappingNode node = find(keys);
+    if (node != null && node != myRoot && node.myMappingInfo != null) {
+      node.myMappingInfo = null;
+      updatePrefixes(keys, -1);
     }
   }
 
   public boolean isPrefix(@NotNull List<KeyStroke> keys) {
-    return myPrefixes.get(ImmutableList.copyOf(keys)) != null;
+    final MappingNode node = find(keys);
+    return node != null && node.isPrefix();
   }
 
-  private void increment(@NotNull ImmutableList<KeyStroke> prefix) {
-    Integer count = myPrefixes.get(prefix);
-    if (count == null) {
-      count = 0;
+  /**
+   * Updates the number of the longer mappings of the proper prefixes of the keys.
+   */
+  private void updatePrefixes(@NotNull List<KeyStroke> keys, int delta) {
+    MappingNode node = myRoot;
+    final int prefixLength = keys.size() - 1;
+    for (int i = 0; i < prefixLength && node != null; i++) {
+      node = node.getChild(keys.get(i));
+      if (node != null) {
+        node.myLongerMappings += delta;
+      }
     }
-    myPrefixes.put(prefix, count + 1);
   }
 
-  private void decrement(@NotNull ImmutableList<KeyStroke> prefix) {
-    final Integer count = myPrefixes.get(prefix);
-    if (count != null) {
-      if (count <= 1) {
-        myPrefixes.remove(prefix);
+  /**
+   * A sequence of keystrokes that is a mapping or a prefix of a mapping.
+   */
+  public static class MappingNode {
+    @Nullable private Map<KeyStroke, MappingNode> myChildren;
+    @Nullable private MappingInfo myMappingInfo;
+    private int myLongerMappings;
+
+    @Nullable
+    public MappingNode getChild(@NotNull KeyStroke key) {
+      return myChildren != null ? myChildren.get(key) : null;
+    }
+
+    /**
+     * Returns the mapping of the keys of this node, if any.
+     */
+    @Nullable
+    public MappingInfo getMappingInfo() {
+      return myMappingInfo;
+    }
+
+    /**
+     * Returns true if there are mappings that start with the keys of this node and are longer than them.
+     */
+    public boolean isPrefix() {
+      return myLongerMappings > 0;
+    }
+
+    @NotNull
+    private MappingNode getOrCreateChild(@NotNull KeyStroke key) {
+      if (myChildren == null) {
+        myChildren = new HashMap<KeyStroke, MappingNode>();
+      }
+      MappingNode child = myChildren.get(key);
+      if (child == null) {
+        child = new MappingNode();
+        myChildren.put(key, child);
+      }
+      return child;
+    }
+
+    private void collectKeys(@NotNull List<List<KeyStroke>> keys) {
+      if (myMappingInfo != null) {
+        keys.add(myMappingInfo.getFromKeys());
       }
-      else {
-        myPrefixes.put(prefix, count - 1);
+      if (myChildren != null) {
+        for (MappingNode child : myChildren.values()) {
+          child.collectKeys(keys);
+        }
       }
     }
   }
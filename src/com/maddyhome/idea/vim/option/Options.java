@@ -448,6 +448,9 @@ public class Options {
     addOption(new ListOption("matchpairs", "mps", new String[]{"(:)", "{:}", "[:]"}, ".:."));
     addOption(new ToggleOption("more", "more", true));
     addOption(new BoundListOption("nrformats", "nf", new String[]{"octal", "hex"}, new String[]{"octal", "hex", "alpha"}));
+    addOption(new NumberOption("redrawtime", "rdt", 2000, 0, Integer.MAX_VALUE));
+    addOption(new NumberOption("regexpengine", "re", 0, 0, 2));
+    addOption(new NumberOption("report", "report", 2, 0, Integer.MAX_VALUE));
     addOption(new NumberOption("scroll", "scr", 0));
     addOption(new NumberOption("scrolljump", "sj", 1));
     addOption(new NumberOption("scrolloff", "so", 0));
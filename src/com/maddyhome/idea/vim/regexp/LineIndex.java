@@ -0,0 +1,189 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2014 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.maddyhome.idea.vim.regexp;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * The lines of the text searched by {@link RegExp#vim_regexec_multi}.
+ *
+ * The text is either the live document of an editor or an immutable snapshot of it that can be searched outside of
+ * the event dispatch thread. Line numbers are zero based and, like in {@link
+ * com.maddyhome.idea.vim.helper.EditorHelper#getLineCount}, the empty line after a trailing newline isn't counted.
+ */
+public abstract class LineIndex {
+  @NotNull
+  public static LineIndex forEditor(@NotNull Editor editor) {
+    return new EditorLineIndex(editor);
+  }
+
+  @NotNull
+  public static LineIndex forText(@NotNull CharSequence text, int caretOffset) {
+    return new TextLineIndex(text, caretOffset);
+  }
+
+  @NotNull
+  public abstract CharSequence getText();
+
+  public abstract int getLineCount();
+
+  public abstract int getLineStartOffset(int line);
+
+  /**
+   * Returns the offset of the end of the line, excluding the newline character.
+   */
+  public abstract int getLineEndOffset(int line);
+
+  public abstract int getLineNumber(int offset);
+
+  /**
+   * Returns the offset of the caret or -1 if the text isn't associated with a caret.
+   */
+  public abstract int getCaretOffset();
+
+  public int getFileSize() {
+    final CharSequence text = getText();
+    final int len = text.length();
+    return len == 0 || text.charAt(len - 1) != '\n' ? len : len - 1;
+  }
+
+  /**
+   * Returns the characters of the line without the newline. Lines past the end of the text contain only the trailing
+   * newline if there is one.
+   */
+  @NotNull
+  public CharBuffer getLineBuffer(int line) {
+    if (line >= getLineCount()) {
+      final CharSequence text = getText();
+      return CharBuffer.wrap(text, getFileSize(), text.length());
+    }
+    return CharBuffer.wrap(getText(), getLineStartOffset(line), getLineEndOffset(line));
+  }
+
+  private static class EditorLineIndex extends LineIndex {
+    public EditorLineIndex(@NotNull Editor editor) {
+      this.editor = editor;
+    }
+
+    @NotNull
+    @Override
+    public CharSequence getText() {
+      return editor.getDocument().getCharsSequence();
+    }
+
+    @Override
+    public int getLineCount() {
+      final Document document = editor.getDocument();
+      final int len = document.getTextLength();
+      int count = document.getLineCount();
+      if (len > 0 && document.getCharsSequence().charAt(len - 1) == '\n') {
+        count--;
+      }
+      return count;
+    }
+
+    @Override
+    public int getLineStartOffset(int line) {
+      return editor.getDocument().getLineStartOffset(line);
+    }
+
+    @Override
+    public int getLineEndOffset(int line) {
+      return editor.getDocument().getLineEndOffset(line);
+    }
+
+    @Override
+    public int getLineNumber(int offset) {
+      return editor.getDocument().getLineNumber(offset);
+    }
+
+    @Override
+    public int getCaretOffset() {
+      return editor.getCaretModel().getOffset();
+    }
+
+    @NotNull private final Editor editor;
+  }
+
+  private static class TextLineIndex extends LineIndex {
+    public TextLineIndex(@NotNull CharSequence text, int caretOffset) {
+      this.text = text;
+      this.caretOffset = caretOffset;
+
+      final int len = text.length();
+      int[] starts = new int[16];
+      int count = 1;
+      for (int i = 0; i < len; i++) {
+        if (text.charAt(i) == '\n') {
+          if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+          }
+          starts[count++] = i + 1;
+        }
+      }
+      if (len > 0 && text.charAt(len - 1) == '\n') {
+        count--;
+      }
+      lineStarts = starts;
+      lineCount = count;
+    }
+
+    @NotNull
+    @Override
+    public CharSequence getText() {
+      return text;
+    }
+
+    @Override
+    public int getLineCount() {
+      return lineCount;
+    }
+
+    @Override
+    public int getLineStartOffset(int line) {
+      return lineStarts[line];
+    }
+
+    @Override
+    public int getLineEndOffset(int line) {
+      return line + 1 < lineCount ? lineStarts[line + 1] - 1 : getFileSize();
+    }
+
+    @Override
+    public int getLineNumber(int offset) {
+      final int i = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+      return i >= 0 ? i : -i - 2;
+    }
+
+    @Override
+    public int getCaretOffset() {
+      return caretOffset;
+    }
+
+    @NotNull private final CharSequence text;
+    private final int caretOffset;
+    @NotNull private final int[] lineStarts;
+    private final int lineCount;
+  }
+}
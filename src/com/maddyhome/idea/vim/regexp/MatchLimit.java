@@ -0,0 +1,46 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2014 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.maddyhome.idea.vim.regexp;
+
+/**
+ * The time limit and the cancellation of the matches done by {@link RegExp#vim_regexec_multi}.
+ *
+ * A limit is usually shared by all the matches of one search or highlight update. The matching checks it from time to
+ * time and gives up as soon as the time is over or the limit has been canceled, possibly from another thread.
+ */
+public class MatchLimit {
+  /**
+   * Creates a limit that is reached after the given number of milliseconds, or only when canceled if it isn't
+   * positive.
+   */
+  public MatchLimit(long millis) {
+    deadline = millis > 0 ? System.nanoTime() + millis * 1000000 : 0;
+  }
+
+  public void cancel() {
+    canceled = true;
+  }
+
+  public boolean isReached() {
+    return canceled || deadline != 0 && System.nanoTime() - deadline >= 0;
+  }
+
+  private final long deadline;
+  private volatile boolean canceled = false;
+}
@@ -20,14 +20,16 @@ package com.maddyhome.idea.vim.regexp;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.LogicalPosition;
 import com.maddyhome.idea.vim.VimPlugin;
-import com.maddyhome.idea.vim.helper.EditorHelper;
 import com.maddyhome.idea.vim.helper.MessageHelper;
 import com.maddyhome.idea.vim.helper.Msg;
+import com.maddyhome.idea.vim.option.NumberOption;
+import com.maddyhome.idea.vim.option.Options;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
+
 public class RegExp {
   @Nullable public static reg_extmatch_T re_extmatch_out = null;
   @Nullable public static reg_extmatch_T re_extmatch_in = null;
@@ -128,10 +130,25 @@ public class RegExp {
 
   private static final int MAX_LIMIT = Integer.MAX_VALUE;
 
+  private static final int BREAKCHECK_TICKS = 1024;  /* calls of fast_breakcheck() between checks of the limit */
+
   private static final int NOT_MULTI = 0;
   private static final int MULTI_ONE = 1;
   private static final int MULTI_MULT = 2;
 
+  /* values of the 'regexpengine' option */
+  private static final int RE_AUTO = 0;
+  private static final int RE_BACKTRACKING = 1;
+  private static final int RE_NFA = 2;
+
+  /* results of nfa_consume() */
+  private static final int NFA_NONE = 0;      /* the node doesn't match */
+  private static final int NFA_CHAR = 1;      /* the node matches the char */
+  private static final int NFA_NEWLINE = 2;   /* the node matches the line break */
+
+  private static final int NFA_ABORT = -1;    /* nfa_regexec() can't do the match */
+  private static final int NFA_MAX_COUNT = 1000;  /* largest count of \{} handled by the NFA engine */
+
   /*
     * Flags to be passed up and down.
     */
@@ -165,6 +182,11 @@ public class RegExp {
      */
   private static final int NSUBEXP = 10;
 
+  /* The NFA engine keeps the start and end of the submatches of a thread in an int[]: line and column of the start,
+   * line and column of the end for each of them, followed by the position where the match started. */
+  private static final int NFA_START = 4 * NSUBEXP;
+  private static final int NFA_SUBS = NFA_START + 2;
+
   private static final int MAGIC_NONE = 1;      /* "\V" very unmagic */
   private static final int MAGIC_OFF = 2;      /* "\M" or 'magic' off */
   private static final int MAGIC_ON = 3;      /* "\m" or 'magic' */
@@ -469,18 +491,25 @@ public class RegExp {
     }
 
     r = new regprog_T();
-    r.program = new StringBuffer();
+    final StringBuffer code = new StringBuffer();
+    regnext_cache = null;
 
     /*
          * Second pass: emit code.
          */
     regcomp_start(expr, magic);
-    regcode = new CharPointer(r.program);
+    regcode = new CharPointer(code);
     regc(REGMAGIC);
     if (reg(REG_NOPAREN, flags) == null) {
       return null;
     }
 
+    /* The program is never modified after it's compiled, so it's matched from an array. */
+    r.program = new char[code.length()];
+    code.getChars(0, code.length(), r.program, 0);
+    r.start = new CharPointer(r.program);
+    r.next = new int[r.program.length];
+
     /* Dig out information for optimizations. */
     r.regstart = 0;          /* Worst-case defaults. */
     r.reganch = 0;
@@ -492,7 +521,7 @@ public class RegExp {
     }
     /* Remember whether this pattern has any \z specials in it. */
     r.reghasz = re_has_z;
-    scan = (new CharPointer(r.program)).ref(1);      /* First BRANCH. */
+    scan = r.start.ref(1);      /* First BRANCH. */
     if (regnext(scan).OP() == END)   /* Only one top-level choice. */ {
       scan = scan.OPERAND();
 
@@ -525,9 +554,11 @@ public class RegExp {
       /*
              * When the r.e. starts with BOW, it is faster to look for a regmust
              * first. Used a lot for "#" and "*" commands. (Added by mool).
+             * The regmust is also used for skipping the lines that can't match
+             * with a scan of the whole text, see vim_regexec_nextline(), so it
+             * is worth having for any pattern.
              */
-      if ((flags.isSet(SPSTART) || scan.OP() == BOW || scan.OP() == EOW)
-          && !(flags.isSet(HASNL))) {
+      if (!(flags.isSet(HASNL))) {
         longest = null;
         len = 0;
         for (; scan != null; scan = regnext(scan)) {
@@ -539,11 +570,21 @@ public class RegExp {
         }
         if (longest != null) {
           r.regmust = longest.ref(0);
+          r.regmust_skip = regmust_skip(longest, len);
         }
         r.regmlen = len;
       }
     }
 
+    /* With 'regexpengine' set to 2 a pattern the NFA engine can't run is an error rather than a backtracking match. */
+    if (regexp_engine() == RE_NFA) {
+      r.nfa = nfa_analyze(r);
+      if (!r.nfa.supported) {
+        VimPlugin.showMessage(MessageHelper.message(Msg.e_nfaunsupported, expr));
+        return null;
+      }
+    }
+
     if (logger.isDebugEnabled()) logger.debug(regdump(expr, r));
 
     return r;
@@ -2032,7 +2073,7 @@ public class RegExp {
     }
 
     //return ml_get_buf(reg_buf, reg_firstlnum + lnum, false);
-    return new CharPointer(EditorHelper.getLineBuffer(reg_buf, reg_firstlnum + lnum));
+    return new CharPointer(reg_buf.getLineBuffer(reg_firstlnum + lnum));
   }
 
   /*
@@ -2066,6 +2107,23 @@ public class RegExp {
   /* buffer in which to search */
   /* nr of line to start looking for match */
   /* column to start looking for match */ {
+    return vim_regexec_multi(rmp, LineIndex.forEditor(buf), lcount, lnum, col);
+  }
+
+  /*
+     * Match a regexp against multiple lines of a text that may be a snapshot of
+     * the document not associated with any editor.
+     */
+  public int vim_regexec_multi(@NotNull regmmatch_T rmp, @NotNull LineIndex buf, int lcount, int lnum, int col) {
+    return vim_regexec_multi(rmp, buf, lcount, lnum, col, null);
+  }
+
+  /*
+     * Match a regexp against multiple lines, giving up when "limit" is reached.
+     * Returns zero when the match was given up, limit.isReached() tells it from no match.
+     */
+  public int vim_regexec_multi(@NotNull regmmatch_T rmp, @NotNull LineIndex buf, int lcount, int lnum, int col,
+                               @Nullable MatchLimit limit) {
     int r;
     //Editor save_curbuf = curbuf;
 
@@ -2077,14 +2135,185 @@ public class RegExp {
     reg_maxline = lcount - lnum;
     ireg_ic = rmp.rmm_ic;
 
+    reg_limit = limit;
+    reg_ticks = 0;
+    got_int = limit != null && limit.isReached();
+    if (got_int) {
+      return 0;
+    }
+
     /* Need to switch to buffer "buf" to make vim_iswordc() work. */
     //curbuf = buf;
     r = vim_regexec_both(null, col);
     //curbuf = save_curbuf;
 
+    reg_limit = null;
+    if (got_int) {
+      add_aborted_match();
+      return 0;
+    }
+
     return r;
   }
 
+  /*
+     * Returns the number of matches given up because their limit was reached.
+     */
+  public static synchronized long getAbortedMatches() {
+    return aborted_matches;
+  }
+
+  private static synchronized void add_aborted_match() {
+    aborted_matches++;
+  }
+
+  /*
+     * Find the first line from "lnum" to "endLine" - 1 in which the regexp can
+     * match.  The lines without the "must appear" string are skipped by
+     * searching the whole text for it instead of trying the match line by
+     * line.
+     * Returns "endLine" if no line can match.
+     */
+  public int vim_regexec_nextline(@NotNull regmmatch_T rmp, @NotNull LineIndex buf, int lnum, int endLine) {
+    final regprog_T prog = rmp.regprog;
+    final int lineCount = buf.getLineCount();
+    if (prog == null || prog.regmust == null || lnum < 0 || lnum >= lineCount || lnum >= endLine) {
+      return lnum;
+    }
+
+    boolean ic = rmp.rmm_ic;
+    if ((prog.regflags & RF_ICASE) != 0) {
+      ic = true;
+    }
+    else if ((prog.regflags & RF_NOICASE) != 0) {
+      ic = false;
+    }
+
+    final CharSequence text = buf.getText();
+    final int end = endLine < lineCount ? buf.getLineStartOffset(endLine) : text.length();
+    final int found = regmust_find(prog, text, buf.getLineStartOffset(lnum), end, ic);
+
+    return found < 0 ? endLine : buf.getLineNumber(found);
+  }
+
+  /*
+     * Find the first match that starts in the lines from "lnum" to "endLine" - 1,
+     * at column "col" or later in line "lnum".  The text is read directly from
+     * "buf" when the NFA engine can be used, so that nothing is allocated for
+     * the lines without a match.  Otherwise the lines are matched one by one.
+     * The line of the match is stored in rmp.rmm_lnum and the positions are
+     * relative to it, like vim_regexec_multi() for that line sets them.
+     * Return zero if there is no match or it was given up because "limit" was
+     * reached.  Return number of lines contained in the match otherwise.
+     */
+  public int vim_regexec_nextmatch(@NotNull regmmatch_T rmp, @NotNull LineIndex buf, int lcount, int lnum, int col,
+                                   int endLine, @Nullable MatchLimit limit) {
+    if (lnum >= endLine) {
+      return 0;
+    }
+
+    reg_startlines = endLine - lnum;
+    nfa_startlnum = 0;
+    int r = vim_regexec_multi(rmp, buf, lcount, lnum, col, limit);
+    reg_startlines = 1;
+    if (r != NFA_ABORT) {
+      if (r == 0) {
+        return 0;
+      }
+      final int start = nfa_startlnum;
+      for (int i = 0; i < NSUBEXP; i++) {
+        if (rmp.startpos[i].lnum >= 0) {
+          rmp.startpos[i].lnum -= start;
+        }
+        if (rmp.endpos[i].lnum >= 0) {
+          rmp.endpos[i].lnum -= start;
+        }
+      }
+      rmp.rmm_lnum = lnum + start;
+      return r - start;
+    }
+
+    while (lnum < endLine) {
+      if (col == 0) {
+        lnum = vim_regexec_nextline(rmp, buf, lnum, endLine);
+        if (lnum >= endLine) {
+          break;
+        }
+      }
+      r = vim_regexec_multi(rmp, buf, lcount, lnum, col, limit);
+      if (r > 0) {
+        rmp.rmm_lnum = lnum;
+        return r;
+      }
+      if (limit != null && limit.isReached()) {
+        break;
+      }
+      lnum++;
+      col = 0;
+    }
+
+    return 0;
+  }
+
+  /*
+     * Build the Boyer-Moore-Horspool skip table for the "must appear" string.
+     * The table is indexed by the low byte of a char.  Both cases of every
+     * char are entered, so the same table works when ignoring case.
+     */
+  @NotNull
+  private static int[] regmust_skip(@NotNull CharPointer must, int len) {
+    final int[] skip = new int[256];
+    Arrays.fill(skip, len);
+    for (int i = 0; i < len - 1; i++) {
+      final char c = must.charAt(i);
+      skip[c & 0xff] = len - 1 - i;
+      skip[Character.toLowerCase(c) & 0xff] = len - 1 - i;
+      skip[Character.toUpperCase(c) & 0xff] = len - 1 - i;
+    }
+    return skip;
+  }
+
+  /*
+     * Find the "must appear" string of the program in text[start, end).
+     * Chars are compared like cstrchr() and cstrncmp() do.
+     * Returns the offset of the string or -1 if it isn't there.
+     */
+  private static int regmust_find(@NotNull regprog_T prog, @NotNull CharSequence text, int start, int end,
+                                  boolean ic) {
+    final CharPointer must = prog.regmust;
+    final int len = prog.regmlen;
+    final int[] skip = prog.regmust_skip;
+    if (must == null || skip == null) {
+      return start;
+    }
+
+    final char first = must.charAt(0);
+    final char firstLower = Character.toLowerCase(first);
+    final char firstUpper = Character.toUpperCase(first);
+    for (int i = start; i + len <= end; ) {
+      final char last = text.charAt(i + len - 1);
+      if (ic ? (firstLower == text.charAt(i) || firstUpper == text.charAt(i)) : first == text.charAt(i)) {
+        int j = 0;
+        while (j < len) {
+          final char t = text.charAt(i + j);
+          final char p = must.charAt(j);
+          if (t != p && (!ic || (Character.toLowerCase(t) != Character.toLowerCase(p) &&
+                                 Character.toUpperCase(t) != Character.toUpperCase(p)))) {
+            break;
+          }
+          j++;
+        }
+        if (j == len) {
+          return i;
+        }
+      }
+      i += ic ? Math.min(skip[Character.toLowerCase(last) & 0xff], skip[Character.toUpperCase(last) & 0xff])
+              : skip[last & 0xff];
+    }
+
+    return -1;
+  }
+
   /*
      * Match a regexp against a string ("line" points to the string) or multiple
      * lines ("line" is null, use reg_getline()).
@@ -2119,6 +2348,7 @@ public class RegExp {
     if (prog_magic_wrong()) {
       return retval;
     }
+    regnext_cache = prog.next;
 
     /* If pattern contains "\c" or "\C": overrule value of ireg_ic */
     if ((prog.regflags & RF_ICASE) != 0) {
@@ -2128,8 +2358,19 @@ public class RegExp {
       ireg_ic = false;
     }
 
-    /* If there is a "must appear" string, look for it. */
-    if (prog.regmust != null) {
+    /* If there is a "must appear" string, look for it.  The NFA looks for it itself when more lines can start a match. */
+    if (reg_startlines > 1) {
+      if (!nfa_use(prog)) {
+        return NFA_ABORT;
+      }
+    }
+    else if (prog.regmust != null && reg_match == null && reg_firstlnum < reg_buf.getLineCount()) {
+      final int start = reg_buf.getLineStartOffset(reg_firstlnum);
+      if (regmust_find(prog, reg_buf.getText(), start + col, reg_buf.getLineEndOffset(reg_firstlnum), ireg_ic) < 0) {
+        return retval;
+      }
+    }
+    else if (prog.regmust != null) {
       char c;
 
       c = prog.regmust.charAt();
@@ -2150,6 +2391,14 @@ public class RegExp {
     reglnum = 0;
     out_of_stack = false;
 
+    if (nfa_use(prog)) {
+      retval = nfa_regexec(prog, col);
+      if (retval != NFA_ABORT || reg_startlines > 1) {
+        return retval;
+      }
+      retval = 0;
+    }
+
     /* Simplest case: Anchored match need be tried only once. */
     if (prog.reganch != 0) {
       char c;
@@ -2246,7 +2495,7 @@ public class RegExp {
       need_clear_zsubexpr = true;
     }
 
-    if (regmatch((new CharPointer(prog.program)).ref(1))) {
+    if (regmatch(prog.start.ref(1))) {
       cleanup_subexpr();
       if (reg_match == null) {
         if (reg_startpos[0].lnum < 0) {
@@ -2297,6 +2546,698 @@ public class RegExp {
     return 0;
   }
 
+  /*
+     * NFA engine.
+     *
+     * The backtracking regmatch() can take exponential time, e.g. for "\([a-z]\+\)\+Q" on a long line without a
+     * "Q".  The NFA engine simulates the same program in lockstep: all the ways the pattern can match are advanced
+     * over the text together, one character at a time, and a program state that is already reached at a text
+     * position isn't followed again.  The time is linear in the length of the text.
+     *
+     * The threads are kept in the order regmatch() would try them: the first alternative of a BRANCH before the
+     * next one, the longer repetition of a greedy multi before the shorter one.  When a thread reaches END the
+     * threads after it are dropped, so the match and the submatches are the same as with backtracking.
+     *
+     * Items that need backtracking (back references, \z(\), \@=, \@!, \@<=, \@<!, \@> and \{} on anything but a
+     * single character) aren't supported, these patterns and single-line matches are left to regmatch().  With
+     * 'regexpengine' set to 2 vim_regcomp() rejects the unsupported patterns instead.
+     */
+
+  /*
+     * Returns true if the current multi-line match should use the NFA engine.
+     */
+  private boolean nfa_use(@NotNull regprog_T prog) {
+    if (reg_match != null || regexp_engine() == RE_BACKTRACKING) {
+      return false;
+    }
+    nfa_T nfa = prog.nfa;
+    if (nfa == null) {
+      nfa = nfa_analyze(prog);
+      prog.nfa = nfa;
+    }
+    return nfa.supported;
+  }
+
+  static int regexp_engine() {
+    final NumberOption option = Options.getInstance().getNumberOption("regexpengine");
+    return option != null ? option.value() : RE_AUTO;
+  }
+
+  /*
+     * Find the nodes reachable from the start of the program and check that the NFA engine can run all of them.
+     */
+  @NotNull
+  private nfa_T nfa_analyze(@NotNull regprog_T prog) {
+    final char[] program = prog.program;
+    final nfa_T nfa = new nfa_T(program.length);
+    final boolean[] seen = new boolean[program.length];
+    final int[] stack = new int[program.length];
+    int sp = 0;
+
+    stack[sp++] = 1;
+    while (sp > 0) {
+      final int pos = stack[--sp];
+      if (seen[pos]) {
+        continue;
+      }
+      seen[pos] = true;
+
+      final CharPointer scan = prog.start.ref(pos);
+      final CharPointer next = regnext(scan);
+      if (next != null) {
+        nfa.next[pos] = next.pointer();
+        stack[sp++] = next.pointer();
+      }
+
+      final int op = program[pos];
+      switch (op) {
+        case END:
+        case BOL:
+        case EOL:
+        case BACK:
+        case EXACTLY:
+        case NOTHING:
+        case BOW:
+        case EOW:
+        case NEWL:
+        case NOPEN:
+        case NCLOSE:
+        case RE_BOF:
+        case RE_EOF:
+        case CURSOR:
+        case RE_LNUM:
+        case RE_COL:
+        case RE_VCOL:
+          break;
+
+        case BRANCH:
+          stack[sp++] = pos + 3;
+          break;
+
+        case BRACE_LIMITS:
+          if (next == null || next.OP() != BRACE_SIMPLE) {
+            return nfa;
+          }
+          nfa.minval[next.pointer()] = scan.OPERAND_MIN();
+          nfa.maxval[next.pointer()] = scan.OPERAND_MAX();
+          break;
+
+        case STAR:
+        case PLUS:
+          nfa.minval[pos] = op == STAR ? 0 : 1;
+          nfa.maxval[pos] = MAX_LIMIT;
+          /*FALLTHROUGH*/
+        case BRACE_SIMPLE: {
+          final int opnd = program[pos + 3];
+          if (opnd != EXACTLY && opnd != NEWL && (opnd < ANY || opnd > NUPPER) &&
+              (opnd < FIRST_NL || opnd > LAST_NL)) {
+            return nfa;
+          }
+          break;
+        }
+
+        default:
+          if ((op < ANY || op > NUPPER) && (op < FIRST_NL || op > LAST_NL) &&
+              (op < MOPEN || op > MOPEN + 9) && (op < MCLOSE || op > MCLOSE + 9)) {
+            return nfa;
+          }
+          break;
+      }
+    }
+
+    /* Every multi gets states for the number of items matched so far, as far as it matters. */
+    int nstates = program.length;
+    for (int pos = 0; pos < program.length; pos++) {
+      if (seen[pos] && (program[pos] == STAR || program[pos] == PLUS || program[pos] == BRACE_SIMPLE)) {
+        final int lo = Math.min(nfa.minval[pos], nfa.maxval[pos]);
+        final int hi = Math.max(nfa.minval[pos], nfa.maxval[pos]);
+        final int max = hi == MAX_LIMIT ? lo : hi;
+        if (max > NFA_MAX_COUNT) {
+          return nfa;
+        }
+        nfa.counter[pos] = nstates;
+        nstates += max + 1;
+      }
+    }
+    nfa.nstates = nstates;
+    nfa.supported = true;
+
+    return nfa;
+  }
+
+  /*
+     * Try a match of the program with the NFA engine, starting at column "col" of the first line.  The match may start
+     * in any of the first reg_startlines lines, the lines after the first one are tried from their start.
+     * The text is read directly from reg_buf, nothing is allocated for the lines that are passed.
+     * Returns 0 for failure, NFA_ABORT when the match has to be done by regmatch(), otherwise the number of lines
+     * contained in the match.  The line in which the match was started is stored in nfa_startlnum.
+     */
+  private int nfa_regexec(@NotNull regprog_T prog, int col) {
+    final nfa_T nfa = prog.nfa;
+    nfa_program = prog.program;
+    nfa_start = prog.start;
+    nfa_prog = nfa;
+    nfa_text = reg_buf.getText();
+    nfa_linecount = reg_buf.getLineCount();
+    nfa_list_T clist = nfa_list(0, nfa.nstates);
+    nfa_list_T nlist = nfa_list(1, nfa.nstates);
+    clist.clear();
+
+    final int[] startsubs = new int[NFA_SUBS];
+    Arrays.fill(startsubs, -1);
+    nfa_startsubs = startsubs;
+
+    final int startcol = col;
+    int lnum = 0;
+    nfa_setline(lnum);
+    int linestart = nfa_linestart;
+    int lineend = nfa_lineend;
+    int[] match = null;
+    int matchlnum = 0;
+    int matchcol = 0;
+
+    while (!got_int) {
+      fast_breakcheck();
+      nfa_lnum = lnum;
+      nfa_col = col;
+      nfa_linestart = linestart;
+      nfa_lineend = lineend;
+      char c = nfa_char(col);
+
+      /* A match can only start in the first lines, the later the start the lower the priority. */
+      if (match == null && lnum < reg_startlines && (prog.reganch == 0 || col == (lnum == 0 ? startcol : 0))) {
+        if (clist.n == 0) {
+          clist.clear();
+          if (reg_startlines > 1 && prog.regmust != null) {
+            /* Nothing is running, skip to the first line with the string that must appear. */
+            final int end = reg_startlines < nfa_linecount - reg_firstlnum
+                            ? reg_buf.getLineStartOffset(reg_firstlnum + reg_startlines) : nfa_text.length();
+            final int found = regmust_find(prog, nfa_text, linestart + col, end, ireg_ic);
+            if (found < 0) {
+              break;
+            }
+            if (found >= lineend && lnum < reg_maxline) {
+              lnum = reg_buf.getLineNumber(found) - reg_firstlnum;
+              col = 0;
+              nfa_setline(lnum);
+              linestart = nfa_linestart;
+              lineend = nfa_lineend;
+              continue;
+            }
+          }
+          if (prog.regstart != '\u0000' && prog.reganch == 0) {
+            /* Skip until the char we know it must start with. */
+            final int found = nfa_findstart(prog.regstart, linestart + col, lineend);
+            col = (found < 0 ? lineend : found) - linestart;
+            nfa_col = col;
+            c = nfa_char(col);
+          }
+        }
+        if (prog.regstart == '\u0000' || prog.regstart == c ||
+            (ireg_ic && Character.toLowerCase(prog.regstart) == Character.toLowerCase(c))) {
+          startsubs[NFA_START] = lnum;
+          startsubs[NFA_START + 1] = col;
+          nfa_addstate(clist, 1, 0, startsubs);
+        }
+      }
+
+      if (clist.n == 0) {
+        if (match != null) {
+          break;
+        }
+        if (c != '\u0000' && prog.reganch == 0 && lnum < reg_startlines) {
+          col++;
+        }
+        else if (lnum + 1 < reg_startlines && lnum < reg_maxline) {
+          lnum++;
+          col = 0;
+          nfa_setline(lnum);
+          linestart = nfa_linestart;
+          lineend = nfa_lineend;
+        }
+        else {
+          break;
+        }
+        continue;
+      }
+
+      /* Where the threads that consume the current character continue. */
+      final int nextlnum;
+      final int nextcol;
+      if (c != '\u0000') {
+        nextlnum = lnum;
+        nextcol = col + 1;
+      }
+      else if (lnum < reg_maxline) {
+        nextlnum = lnum + 1;
+        nextcol = 0;
+      }
+      else {
+        nextlnum = -1;
+        nextcol = -1;
+      }
+      if (nextlnum != lnum && nextlnum >= 0) {
+        nfa_setline(nextlnum);
+      }
+      final int nextlinestart = nfa_linestart;
+      final int nextlineend = nfa_lineend;
+
+      nlist.clear();
+      for (int i = 0; i < clist.n; i++) {
+        final int pos = clist.node[i];
+        if (nfa_program[pos] == END) {
+          /* The threads after this one have a lower priority. */
+          match = clist.subs[i];
+          matchlnum = lnum;
+          matchcol = col;
+          break;
+        }
+        if (nextlnum < 0) {
+          continue;
+        }
+
+        final int aux = clist.aux[i];
+        final int op = nfa_program[pos];
+        final int move;
+        if (op == STAR || op == PLUS || op == BRACE_SIMPLE) {
+          move = nfa_consume(pos + 3, c, lnum, true);
+        }
+        else if (op == EXACTLY) {
+          final char o = nfa_program[pos + 3 + aux];
+          move = c == o || (ireg_ic && (Character.toLowerCase(c) == Character.toLowerCase(o) ||
+                                        (aux > 0 && Character.toUpperCase(c) == Character.toUpperCase(o))))
+                 ? NFA_CHAR : NFA_NONE;
+        }
+        else {
+          move = nfa_consume(pos, c, lnum, false);
+        }
+        if (move == NFA_NONE) {
+          continue;
+        }
+        if (move == NFA_CHAR && c == '\u0000') {
+          /* Matching past the end of the line, only regmatch() knows how to handle it. */
+          nfa_startsubs = null;
+          return NFA_ABORT;
+        }
+
+        nfa_lnum = nextlnum;
+        nfa_col = nextcol;
+        nfa_linestart = nextlinestart;
+        nfa_lineend = nextlineend;
+        if (op == STAR || op == PLUS || op == BRACE_SIMPLE) {
+          nfa_addmulti(nlist, pos, aux + 1, clist.subs[i]);
+        }
+        else if (op == EXACTLY && nfa_program[pos + 4 + aux] != '\u0000') {
+          nfa_addstate(nlist, pos, aux + 1, clist.subs[i]);
+        }
+        else {
+          nfa_addstate(nlist, nfa_prog.next[pos], 0, clist.subs[i]);
+        }
+      }
+
+      if (nextlnum < 0) {
+        break;
+      }
+      final nfa_list_T tmp = clist;
+      clist = nlist;
+      nlist = tmp;
+      lnum = nextlnum;
+      col = nextcol;
+      linestart = nextlinestart;
+      lineend = nextlineend;
+    }
+
+    nfa_startsubs = null;
+    nfa_text = null;
+    if (match == null || got_int) {
+      return 0;
+    }
+
+    for (int i = 0; i < NSUBEXP; i++) {
+      reg_startpos[i].lnum = match[4 * i];
+      reg_startpos[i].col = match[4 * i + 1];
+      reg_endpos[i].lnum = match[4 * i + 2];
+      reg_endpos[i].col = match[4 * i + 3];
+    }
+    if (reg_startpos[0].lnum < 0) {
+      reg_startpos[0].lnum = match[NFA_START];
+      reg_startpos[0].col = match[NFA_START + 1];
+    }
+    if (reg_endpos[0].lnum < 0) {
+      reg_endpos[0].lnum = matchlnum;
+      reg_endpos[0].col = matchcol;
+    }
+    nfa_startlnum = match[NFA_START];
+    re_extmatch_out = null;
+    reglnum = matchlnum;
+    regline = reg_getline(matchlnum);
+    reginput = regline.ref(matchcol);
+
+    return 1 + matchlnum;
+  }
+
+  /*
+     * Set nfa_linestart and nfa_lineend to the offsets of line "lnum" in the text, see LineIndex.getLineBuffer().
+     */
+  private void nfa_setline(int lnum) {
+    final int line = reg_firstlnum + lnum;
+    if (line < nfa_linecount) {
+      nfa_linestart = reg_buf.getLineStartOffset(line);
+      nfa_lineend = reg_buf.getLineEndOffset(line);
+    }
+    else {
+      nfa_linestart = reg_buf.getFileSize();
+      nfa_lineend = nfa_text.length();
+    }
+  }
+
+  /*
+     * Get the char at column "col" of the line set by nfa_setline(), NUL after the end of the line.
+     */
+  private char nfa_char(int col) {
+    final int offset = nfa_linestart + col;
+    return offset < nfa_lineend ? nfa_text.charAt(offset) : '\u0000';
+  }
+
+  /*
+     * Find "c" in text[start, end) like cstrchr() does.
+     * Returns the offset of the char or -1 if it isn't there.
+     */
+  private int nfa_findstart(char c, int start, int end) {
+    final char cl = ireg_ic ? Character.toLowerCase(c) : c;
+    final char cu = ireg_ic ? Character.toUpperCase(c) : c;
+    for (int i = start; i < end; i++) {
+      final char ch = nfa_text.charAt(i);
+      if (ch == '\u0000') {
+        return -1;
+      }
+      if (ch == cl || ch == cu) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /*
+     * The submatches of a new thread are filled in a scratch array, copy them when the thread is kept.
+     */
+  @NotNull
+  private int[] nfa_keep(@NotNull int[] subs) {
+    return subs == nfa_startsubs ? subs.clone() : subs;
+  }
+
+  /*
+     * Add the thread at program position "pos" to the list, following the nodes that don't consume any text.
+     * "aux" is the index of the next char of an EXACTLY node.
+     */
+  private void nfa_addstate(@NotNull nfa_list_T list, int pos, int aux, @NotNull int[] subs) {
+    final int op = nfa_program[pos];
+    if (op == STAR || op == PLUS || op == BRACE_SIMPLE) {
+      nfa_addmulti(list, pos, 0, subs);
+      return;
+    }
+
+    /* The program positions inside the operand of EXACTLY are used for the states after its first chars. */
+    final int state = aux > 0 ? pos + 3 + aux : pos;
+    if (list.stamp[state] == list.gen) {
+      return;
+    }
+    list.stamp[state] = list.gen;
+
+    final int next = nfa_prog.next[pos];
+    final char c = nfa_char(nfa_col);
+    switch (op) {
+      case BRANCH:
+        if (next < 0 || nfa_program[next] != BRANCH) {
+          nfa_addstate(list, pos + 3, 0, subs);  /* No choice. */
+        }
+        else {
+          for (int b = pos; b >= 0 && nfa_program[b] == BRANCH; b = nfa_prog.next[b]) {
+            nfa_addstate(list, b + 3, 0, subs);
+          }
+        }
+        return;
+
+      case BACK:
+      case NOTHING:
+      case NOPEN:
+      case NCLOSE:
+      case BRACE_LIMITS:
+      case RE_VCOL:
+        nfa_addstate(list, next, 0, subs);
+        return;
+
+      case BOL:
+        if (nfa_col == 0) {
+          nfa_addstate(list, next, 0, subs);
+        }
+        return;
+
+      case EOL:
+        if (c == '\u0000') {
+          nfa_addstate(list, next, 0, subs);
+        }
+        return;
+
+      case RE_BOF:
+        if (reg_firstlnum + nfa_lnum == 0 && nfa_col == 0) {
+          nfa_addstate(list, next, 0, subs);
+        }
+        return;
+
+      case RE_EOF:
+        if (nfa_lnum == reg_maxline && c == '\u0000') {
+          nfa_addstate(list, next, 0, subs);
+        }
+        return;
+
+      case CURSOR: {
+        final int curoff = reg_buf.getCaretOffset();
+        if (curoff >= 0) {
+          final int curline = reg_buf.getLineNumber(curoff);
+          if (nfa_lnum + reg_firstlnum == curline && nfa_col == curoff - reg_buf.getLineStartOffset(curline)) {
+            nfa_addstate(list, next, 0, subs);
+          }
+        }
+        return;
+      }
+
+      case RE_LNUM:
+        if (re_num_cmp(nfa_lnum + reg_firstlnum, nfa_start.ref(pos))) {
+          nfa_addstate(list, next, 0, subs);
+        }
+        return;
+
+      case RE_COL:
+        if (re_num_cmp(nfa_col + 1, nfa_start.ref(pos))) {
+          nfa_addstate(list, next, 0, subs);
+        }
+        return;
+
+      case BOW:
+        if (c != '\u0000' && CharacterClasses.isWord(c) &&
+            (nfa_col == 0 || !CharacterClasses.isWord(nfa_char(nfa_col - 1)))) {
+          nfa_addstate(list, next, 0, subs);
+        }
+        return;
+
+      case EOW:
+        if (nfa_col > 0 && CharacterClasses.isWord(nfa_char(nfa_col - 1)) &&
+            (c == '\u0000' || !CharacterClasses.isWord(c))) {
+          nfa_addstate(list, next, 0, subs);
+        }
+        return;
+
+      default:
+        if (op >= MOPEN && op <= MOPEN + 9) {
+          final int[] s = subs.clone();
+          s[4 * (op - MOPEN)] = nfa_lnum;
+          s[4 * (op - MOPEN) + 1] = nfa_col;
+          nfa_addstate(list, next, 0, s);
+        }
+        else if (op >= MCLOSE && op <= MCLOSE + 9) {
+          final int[] s = subs.clone();
+          s[4 * (op - MCLOSE) + 2] = nfa_lnum;
+          s[4 * (op - MCLOSE) + 3] = nfa_col;
+          nfa_addstate(list, next, 0, s);
+        }
+        else {
+          /* END or a node that consumes a character. */
+          list.add(pos, aux, nfa_keep(subs));
+        }
+        break;
+    }
+  }
+
+  /*
+     * Add the thread of a STAR, PLUS or BRACE_SIMPLE node that has matched its operand "count" times.
+     */
+  private void nfa_addmulti(@NotNull nfa_list_T list, int pos, int count, @NotNull int[] subs) {
+    final int minval = nfa_prog.minval[pos];
+    final int maxval = nfa_prog.maxval[pos];
+    final int lo = Math.min(minval, maxval);
+    final int hi = Math.max(minval, maxval);
+    /* Above the minimum the count of an unlimited multi doesn't matter. */
+    if (hi == MAX_LIMIT && count > lo) {
+      count = lo;
+    }
+
+    final int state = nfa_prog.counter[pos] + count;
+    if (list.stamp[state] == list.gen) {
+      return;
+    }
+    list.stamp[state] = list.gen;
+
+    final boolean more = count < hi;
+    final boolean enough = count >= lo;
+    if (minval <= maxval) {
+      /* Range is the normal way around, use longest match */
+      if (more) {
+        list.add(pos, count, nfa_keep(subs));
+      }
+      if (enough) {
+        nfa_addstate(list, nfa_prog.next[pos], 0, subs);
+      }
+    }
+    else {
+      /* Range is backwards, use shortest match first */
+      if (enough) {
+        nfa_addstate(list, nfa_prog.next[pos], 0, subs);
+      }
+      if (more) {
+        list.add(pos, count, nfa_keep(subs));
+      }
+    }
+  }
+
+  /*
+     * Check if the node at "pos" matches the char "c" of line "lnum".  "repeat" is true for the operand of a multi,
+     * which is matched like regrepeat() does.
+     * Returns NFA_CHAR if the char matches, NFA_NEWLINE if the line break matches, NFA_NONE otherwise.
+     */
+  private int nfa_consume(int pos, char c, int lnum, boolean repeat) {
+    int op = nfa_program[pos];
+    if (op == NEWL) {
+      return c == '\u0000' && lnum < reg_maxline ? NFA_NEWLINE : NFA_NONE;
+    }
+    if (op == EXACTLY) {
+      final char o = nfa_program[pos + 3];
+      final boolean same = ireg_ic ? c == Character.toUpperCase(o) || c == Character.toLowerCase(o) : c == o;
+      return same ? NFA_CHAR : NFA_NONE;
+    }
+
+    final boolean nl = WITH_NL(op);
+    if (nl) {
+      op -= ADD_NL;
+    }
+    final boolean newline = c == '\u0000' && nl && lnum < reg_maxline;
+    if (repeat && (op == IDENT || op == SIDENT || op == KWORD || op == SKWORD || op == FNAME || op == SFNAME)) {
+      /* regrepeat() checks these classes before the end of the line. */
+      if (nfa_class(op, pos, c, true)) {
+        return NFA_CHAR;
+      }
+      return newline ? NFA_NEWLINE : NFA_NONE;
+    }
+    if (newline) {
+      return NFA_NEWLINE;
+    }
+    if (repeat && c == '\u0000') {
+      return NFA_NONE;
+    }
+    return nfa_class(op, pos, c, repeat) ? NFA_CHAR : NFA_NONE;
+  }
+
+  /*
+     * Check the char "c" against the character class node at "pos" like regmatch() does, or like regrepeat() does
+     * when "repeat" is true.
+     */
+  private boolean nfa_class(int op, int pos, char c, boolean repeat) {
+    switch (op) {
+      case ANY:
+        return c != '\u0000';
+      case IDENT:
+        return Character.isJavaIdentifierPart(c);
+      case SIDENT:
+        return !(repeat ? Character.isDigit(c) : CharacterClasses.isDigit(c)) && Character.isJavaIdentifierPart(c);
+      case KWORD:
+        return CharacterClasses.isWord(c);
+      case SKWORD:
+        return !(repeat ? Character.isDigit(c) : CharacterClasses.isDigit(c)) && CharacterClasses.isWord(c);
+      case FNAME:
+        return CharacterClasses.isFile(c);
+      case SFNAME:
+        return !(repeat ? Character.isDigit(c) : CharacterClasses.isDigit(c)) && CharacterClasses.isFile(c);
+      case PRINT:
+        return CharacterClasses.isPrint(c);
+      case SPRINT:
+        return !(repeat ? Character.isDigit(c) : CharacterClasses.isDigit(c)) && CharacterClasses.isPrint(c);
+      case WHITE:
+        return CharacterClasses.isWhite(c);
+      case NWHITE:
+        return c != '\u0000' && !CharacterClasses.isWhite(c);
+      case DIGIT:
+        return CharacterClasses.isDigit(c);
+      case NDIGIT:
+        return c != '\u0000' && !CharacterClasses.isDigit(c);
+      case HEX:
+        return CharacterClasses.isHex(c);
+      case NHEX:
+        return c != '\u0000' && !CharacterClasses.isHex(c);
+      case OCTAL:
+        return CharacterClasses.isOctal(c);
+      case NOCTAL:
+        return c != '\u0000' && !CharacterClasses.isOctal(c);
+      case WORD:
+        return CharacterClasses.isWord(c);
+      case NWORD:
+        return c != '\u0000' && !CharacterClasses.isWord(c);
+      case HEAD:
+        return CharacterClasses.isHead(c);
+      case NHEAD:
+        return c != '\u0000' && !CharacterClasses.isHead(c);
+      case ALPHA:
+        return CharacterClasses.isAlpha(c);
+      case NALPHA:
+        return c != '\u0000' && !CharacterClasses.isAlpha(c);
+      case LOWER:
+        return CharacterClasses.isLower(c);
+      case NLOWER:
+        return c != '\u0000' && !CharacterClasses.isLower(c);
+      case UPPER:
+        return CharacterClasses.isUpper(c);
+      case NUPPER:
+        return c != '\u0000' && !CharacterClasses.isUpper(c);
+      case ANYOF:
+      case ANYBUT: {
+        if (c == '\u0000') {
+          return false;
+        }
+        final char cu = ireg_ic ? Character.toUpperCase(c) : c;
+        final char cl = ireg_ic ? Character.toLowerCase(c) : c;
+        boolean found = false;
+        for (int i = pos + 3; nfa_program[i] != '\u0000'; i++) {
+          if (nfa_program[i] == cl || nfa_program[i] == cu) {
+            found = true;
+            break;
+          }
+        }
+        return found == (op == ANYOF);
+      }
+      default:
+        return false;
+    }
+  }
+
+  @NotNull
+  private nfa_list_T nfa_list(int i, int nstates) {
+    nfa_list_T list = nfa_lists[i];
+    if (list == null || list.stamp.length < nstates) {
+      list = new nfa_list_T(nstates);
+      nfa_lists[i] = list;
+    }
+    return list;
+  }
+
   /*
      * regmatch - main matching routine
      *
@@ -2319,7 +3260,7 @@ public class RegExp {
 
     /* Some patterns my cause a long time to match, even though they are not
          * illegal.  E.g., "\([a-z]\+\)\+Q".  Allow breaking them with CTRL-C. */
-    //fast_breakcheck(); - TODO
+    fast_breakcheck();
 
     while (scan != null) {
       if (got_int || out_of_stack) {
@@ -2368,9 +3309,13 @@ public class RegExp {
           case CURSOR:
             /* Check if the buffer is in a window and compare the
                          * reg_win->w_cursor position to the match position. */
-            LogicalPosition curpos = reg_buf.getCaretModel().getLogicalPosition();
-            if (reglnum + reg_firstlnum != curpos.line ||
-                reginput.pointer() - regline.pointer() != curpos.column) {
+            int curoff = reg_buf.getCaretOffset();
+            if (curoff < 0) {
+              return false;
+            }
+            int curline = reg_buf.getLineNumber(curoff);
+            if (reglnum + reg_firstlnum != curline ||
+                reginput.pointer() - regline.pointer() != curoff - reg_buf.getLineStartOffset(curline)) {
               return false;
             }
             break;
@@ -3060,7 +4005,7 @@ public class RegExp {
                     return false;
                   }
                   reginput = regline.ref(regline.strlen());
-                  // fast_breakcheck(); - TOOD
+                  fast_breakcheck();
                   if (got_int || out_of_stack) {
                     return false;
                   }
@@ -3559,17 +4504,34 @@ public class RegExp {
   private CharPointer regnext(@NotNull CharPointer p) {
     int offset;
 
+    /* While matching, the next pointers are decoded only once per node of the program. */
+    final int[] cache = regnext_cache;
+    final int pos = p.pointer();
+    if (cache != null && pos < cache.length) {
+      final int next = cache[pos];
+      if (next > 0) {
+        return p.ref(next - pos);
+      }
+      if (next < 0) {
+        return null;
+      }
+    }
+
     offset = p.NEXT();
     if (offset == 0) {
+      if (cache != null && pos < cache.length) {
+        cache[pos] = -1;
+      }
       return null;
     }
 
     if (p.OP() == BACK) {
-      return p.ref(-offset);
+      offset = -offset;
     }
-    else {
-      return p.ref(offset);
+    if (cache != null && pos < cache.length) {
+      cache[pos] = pos + offset;
     }
+    return p.ref(offset);
   }
 
   /*
@@ -3577,7 +4539,7 @@ public class RegExp {
      * Return true if it's wrong.
      */
   private boolean prog_magic_wrong() {
-    if ((reg_match == null ? reg_mmatch.regprog.program : reg_match.regprog.program).charAt(0) != REGMAGIC) {
+    if ((reg_match == null ? reg_mmatch.regprog.program : reg_match.regprog.program)[0] != REGMAGIC) {
       VimPlugin.showMessage(MessageHelper.message(Msg.e_re_corr));
       return true;
     }
@@ -3637,7 +4599,19 @@ public class RegExp {
   private void reg_nextline() {
     regline = reg_getline(++reglnum);
     reginput = regline.ref(0);
-    // fast_breakcheck(); TODO
+    fast_breakcheck();
+  }
+
+  /*
+     * Check the limit of the match every BREAKCHECK_TICKS calls and set got_int when it has been reached.
+     */
+  private void fast_breakcheck() {
+    if (reg_limit != null && ++reg_ticks >= BREAKCHECK_TICKS) {
+      reg_ticks = 0;
+      if (reg_limit.isReached()) {
+        got_int = true;
+      }
+    }
   }
 
   /*
@@ -3900,7 +4874,7 @@ public class RegExp {
     reg_mmatch = rmp;
     //reg_buf = curbuf;           /* always works on the current buffer! */
     reg_firstlnum = lnum;
-    reg_maxline = EditorHelper.getLineCount(reg_buf) - lnum;
+    reg_maxline = reg_buf.getLineCount() - lnum;
 
     return vim_regsub_both(source, magic, backslash);
   }
@@ -4663,10 +5637,71 @@ public class RegExp {
     char regstart;
     char reganch;
     @Nullable CharPointer regmust;
+    /* Boyer-Moore-Horspool skip table for regmust, see regmust_skip() */
+    @Nullable int[] regmust_skip;
     int regmlen;
     int regflags;
     char reghasz;
-    StringBuffer program;
+    char[] program;
+    /* Pointer to the start of the program, only used for creating references */
+    CharPointer start;
+    /* Absolute positions of the next nodes, 0 if not decoded yet, -1 if there is no next node */
+    int[] next;
+    /* What the NFA engine knows about the program, null until it is first matched */
+    @Nullable nfa_T nfa;
+  }
+
+  /*
+   * The nodes of a program as seen by the NFA engine, see nfa_analyze().
+   */
+  private static class nfa_T {
+    public nfa_T(int size) {
+      next = new int[size];
+      Arrays.fill(next, -1);
+      counter = new int[size];
+      minval = new int[size];
+      maxval = new int[size];
+    }
+
+    boolean supported;
+    int nstates;                /* program positions followed by the counter states of the multis */
+    @NotNull final int[] next;     /* position of the next node, -1 if there is none */
+    @NotNull final int[] counter;  /* first counter state of a STAR, PLUS or BRACE_SIMPLE node */
+    @NotNull final int[] minval;   /* limits of a STAR, PLUS or BRACE_SIMPLE node */
+    @NotNull final int[] maxval;
+  }
+
+  /*
+   * The threads of the NFA engine at one text position, in priority order.
+   */
+  private static class nfa_list_T {
+    public nfa_list_T(int nstates) {
+      stamp = new int[nstates];
+    }
+
+    void clear() {
+      n = 0;
+      gen++;
+    }
+
+    void add(int pos, int aux, @NotNull int[] subs) {
+      if (n == node.length) {
+        node = Arrays.copyOf(node, n * 2);
+        this.aux = Arrays.copyOf(this.aux, n * 2);
+        this.subs = Arrays.copyOf(this.subs, n * 2);
+      }
+      node[n] = pos;
+      this.aux[n] = aux;
+      this.subs[n] = subs;
+      n++;
+    }
+
+    @NotNull int[] node = new int[16];
+    @NotNull int[] aux = new int[16];
+    @NotNull int[][] subs = new int[16][];
+    int n;
+    @NotNull final int[] stamp;  /* equal to gen for the states that are in the list */
+    int gen;
   }
 
   private static class MinMax {
@@ -4729,6 +5764,7 @@ public class RegExp {
     @NotNull public lpos_T[] startpos = new lpos_T[NSUBEXP];
     @NotNull public lpos_T[] endpos = new lpos_T[NSUBEXP];
     public boolean rmm_ic;
+    public int rmm_lnum;  /* line of the match found by vim_regexec_nextmatch() */
   }
 
   private int reg_do_extmatch = 0;
@@ -4742,6 +5778,7 @@ public class RegExp {
   private int regnzpar;       /* \z() count. */
   private char re_has_z;       /* \z item detected */
   private CharPointer regcode;       /* Code-emit pointer */
+  @Nullable private int[] regnext_cache; /* Next pointers of the program being matched */
   @NotNull private boolean[] had_endbrace = new boolean[NSUBEXP];  /* flags, true if end of () found */
   private int regflags;       /* RF_ flags for prog */
   @NotNull private int[] brace_min = new int[10];  /* Minimums for complex brace repeats */
@@ -4825,7 +5862,7 @@ public class RegExp {
   @NotNull private lpos_T[] reg_startpos = new lpos_T[NSUBEXP];
   @NotNull private lpos_T[] reg_endpos = new lpos_T[NSUBEXP];
   //static win_T            *reg_win;
-  private Editor reg_buf;
+  private LineIndex reg_buf;
   private int reg_firstlnum;
   private int reg_maxline;
 
@@ -4837,6 +5874,25 @@ public class RegExp {
   @NotNull private lpos_T[] reg_endzpos = new lpos_T[NSUBEXP];   /* idem, end pos */
 
   private boolean got_int = false;
+  @Nullable private MatchLimit reg_limit;
+  private int reg_ticks;
+
+  private static long aborted_matches = 0;
+
+  /* Work variables of the NFA engine. */
+  @NotNull private final nfa_list_T[] nfa_lists = new nfa_list_T[2];
+  private char[] nfa_program;
+  private CharPointer nfa_start;
+  private nfa_T nfa_prog;
+  private int nfa_lnum;
+  private int nfa_col;
+  private CharSequence nfa_text;
+  private int nfa_linecount;
+  private int nfa_linestart;
+  private int nfa_lineend;
+  private int reg_startlines = 1;  /* number of lines in which a match may start */
+  private int[] nfa_startsubs;  /* submatches of a new thread, copied when the thread is added to a list */
+  private int nfa_startlnum;
 
   /*
     * The arguments from BRACE_LIMITS are stored here.  They are actually local
@@ -0,0 +1,124 @@
+/*
+ * IdeaVim - Vim emulator for IDEs based on the IntelliJ platform
+ * Copyright (C) 2003-2014 The IdeaVim authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.maddyhome.idea.vim.regexp;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of compiled regexp programs.
+ *
+ * A compiled {@link RegExp.regprog_T} is never modified while matching, so the same program can be shared by the
+ * search, substitute and highlighting code as long as the pattern text, the magic level and the 'regexpengine' value
+ * are the same. The 'ignorecase' setting is applied at execution time via {@link RegExp.regmmatch_T#rmm_ic} and isn't
+ * a part of the key.
+ */
+public class RegExpCache {
+  public static final int MAX_SIZE = 64;
+
+  /**
+   * Returns the compiled program for the pattern, compiling it with the given regexp instance on a cache miss.
+   * Patterns that fail to compile are not cached, so the error message is shown each time.
+   */
+  @Nullable
+  public static synchronized RegExp.regprog_T compile(@NotNull RegExp sp, @Nullable String pattern, int magic) {
+    if (pattern == null) {
+      return sp.vim_regcomp(null, magic);
+    }
+
+    final Key key = new Key(pattern, magic != 0, RegExp.regexp_engine());
+    RegExp.regprog_T prog = cache.get(key);
+    if (prog != null) {
+      hits++;
+      return prog;
+    }
+
+    misses++;
+    prog = sp.vim_regcomp(pattern, magic);
+    if (prog != null) {
+      cache.put(key, prog);
+    }
+
+    return prog;
+  }
+
+  public static synchronized long getHits() {
+    return hits;
+  }
+
+  public static synchronized long getMisses() {
+    return misses;
+  }
+
+  public static synchronized int size() {
+    return cache.size();
+  }
+
+  public static synchronized void clear() {
+    cache.clear();
+    hits = 0;
+    misses = 0;
+  }
+
+  private static class Key {
+    public Key(@NotNull String pattern, boolean magic, int engine) {
+      this.pattern = pattern;
+      this.magic = magic;
+      this.engine = engine;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+
+      final Key key = (Key)o;
+      return magic == key.magic && engine == key.engine && pattern.equals(key.pattern);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * pattern.hashCode() + (magic ? 1 : 0)) + engine;
+    }
+
+    @NotNull private final String pattern;
+    private final boolean magic;
+    private final int engine;
+  }
+
+  @NotNull private static final Map<Key, RegExp.regprog_T> cache =
+    new LinkedHashMap<Key, RegExp.regprog_T>(MAX_SIZE, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, RegExp.regprog_T> eldest) {
+        return size() > MAX_SIZE;
+      }
+    };
+  private static long hits = 0;
+  private static long misses = 0;
+
+  private RegExpCache() {
+  }
+}
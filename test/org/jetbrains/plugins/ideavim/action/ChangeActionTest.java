@@ -323,6 +323,18 @@ public class ChangeActionTest extends VimTestCase {
            "foo  bar");
   }
 
+  // |J|
+  public void testDeleteJoinLinesCaretAtLastJoin() {
+    typeTextInFile(parseKeys("3J"),
+                   "<caret>a\n" +
+                   "  b\n" +
+                   "  c\n" +
+                   "d\n");
+    myFixture.checkResult("a b c\n" +
+                          "d\n");
+    assertOffset(3);
+  }
+
   public void testDeleteJoinVisualLinesSpaces() {
     doTest(parseKeys("v2jJ"),
            "    a<caret> 1\n" +
@@ -536,4 +548,14 @@ public class ChangeActionTest extends VimTestCase {
                           "    }\n" +
                           "}\n");
   }
+
+  // |i| |count| |.|
+  public void testRepeatCountedInsert() {
+    doTest(parseKeys("3i", "ab", "<Esc>", "$", "."), "<caret>x\n", "ababababababx\n");
+  }
+
+  // |i| |.|
+  public void testRepeatInsertWithCaretMovement() {
+    doTest(parseKeys("i", "()", "<Left>", "a", "<Esc>", "$", "."), "<caret>x\n", "(a)(a)x\n");
+  }
 }
@@ -23,4 +23,14 @@ public class MacroActionTest extends VimTestCase {
     assertNotNull(register);
     assertEquals("3l", register.getText());
   }
+
+  // |q|
+  public void testAppendRecordingToYankedText() {
+    final Editor editor = typeTextInFile(parseKeys("\"ayw", "qA", "l", "q"), "<caret>one two three\n");
+    assertFalse(CommandState.getInstance(editor).isRecording());
+    final Register register = VimPlugin.getRegister().getRegister('a');
+    assertNotNull(register);
+    assertEquals("one l", register.getText());
+    assertEquals(5, register.getKeys().size());
+  }
 }
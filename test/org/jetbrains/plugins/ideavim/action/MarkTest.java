@@ -1,9 +1,12 @@
 package org.jetbrains.plugins.ideavim.action;
 
 import com.maddyhome.idea.vim.VimPlugin;
+import com.maddyhome.idea.vim.common.Jump;
 import com.maddyhome.idea.vim.common.Mark;
 import org.jetbrains.plugins.ideavim.VimTestCase;
 
+import java.util.List;
+
 import static com.maddyhome.idea.vim.helper.StringHelper.parseKeys;
 
 /**
@@ -63,6 +66,16 @@ public class MarkTest extends VimTestCase {
     assertEquals(6, mark.getCol());
   }
 
+  // |CTRL-O|
+  public void testJumpIsMovedDownWhenLinesAreInsertedAbove() {
+    typeTextInFile(parseKeys("G", "gg", "j", "Obiff<Esc>"), "    foo\n" +
+                                                             "    ba<caret>r\n" +
+                                                             "    baz\n");
+    final List<Jump> jumps = VimPlugin.getMark().getJumps();
+    assertFalse(jumps.isEmpty());
+    assertEquals(3, jumps.get(jumps.size() - 1).getLogicalLine());
+  }
+
   // |m| |`|
   public void testMarkAndJumpToMark() {
     typeTextInFile(parseKeys("6l", "mZ", "G$", "`Z"), "    foo\n" +
@@ -100,6 +113,38 @@ public class MarkTest extends VimTestCase {
                           "    mnop\n");
   }
 
+  // |m| |:substitute|
+  public void testMarkIsMovedAfterSubstituteAndDeletedMark() {
+    typeTextInFile(parseKeys("mb", "j", "ma", "dd", ":1s/foo/a\\rb\\rc\\rd/<Enter>", "5G", "o<Esc>"),
+                   "foo\n" +
+                   "bar\n" +
+                   "<caret>baz\n" +
+                   "qux\n" +
+                   "end\n");
+    assertNull(VimPlugin.getMark().getMark(myFixture.getEditor(), 'a'));
+    Mark mark = VimPlugin.getMark().getMark(myFixture.getEditor(), 'b');
+    assertNotNull(mark);
+    assertEquals(6, mark.getLogicalLine());
+  }
+
+  // |m| |J|
+  public void testMarkIsMovedToJoinedLine() {
+    typeTextInFile(parseKeys("ma", "jj", "mb", "gg", "3J"), "one\n" +
+                                                           "<caret>two\n" +
+                                                           "three\n" +
+                                                           "four\n" +
+                                                           "five\n");
+    myFixture.checkResult("one two three\n" +
+                          "four\n" +
+                          "five\n");
+    Mark mark = VimPlugin.getMark().getMark(myFixture.getEditor(), 'a');
+    assertNotNull(mark);
+    assertEquals(0, mark.getLogicalLine());
+    mark = VimPlugin.getMark().getMark(myFixture.getEditor(), 'b');
+    assertNotNull(mark);
+    assertEquals(1, mark.getLogicalLine());
+  }
+
   // VIM-43 |i| |`.|
   public void testGotoLastChangePosition() {
     typeTextInFile(parseKeys("i", "hello ", "<Esc>", "gg", "`."), "one two\n" +
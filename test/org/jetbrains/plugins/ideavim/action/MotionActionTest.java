@@ -2,6 +2,7 @@ package org.jetbrains.plugins.ideavim.action;
 
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.VisualPosition;
+import com.maddyhome.idea.vim.KeyHandler;
 import com.maddyhome.idea.vim.VimPlugin;
 import org.jetbrains.plugins.ideavim.VimTestCase;
 
@@ -55,6 +56,16 @@ public class MotionActionTest extends VimTestCase {
     assertEquals(new VisualPosition(2, 2), position);
   }
 
+  // |l| |d|
+  public void testMotionsBetweenOperators() {
+    final long keys = KeyHandler.getKeyLatency().getCount();
+    typeTextInFile(parseKeys("l", "l", "dw", "2l", "d2l", "l"),
+                   "<caret>one two three four\n");
+    myFixture.checkResult("ontwthree four\n");
+    assertOffset(5);
+    assertEquals(keys + 10, KeyHandler.getKeyLatency().getCount());
+  }
+
   public void testDeleteDigitsInCount() {
     typeTextInFile(parseKeys("42<Delete>l"),
                    "on<caret>e two three four five six seven\n");
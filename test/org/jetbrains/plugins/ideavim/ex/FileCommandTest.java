@@ -0,0 +1,85 @@
+package org.jetbrains.plugins.ideavim.ex;
+
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.DumbServiceImpl;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.ideavim.VimTestCase;
+
+/**
+ * @author vlan
+ */
+public class FileCommandTest extends VimTestCase {
+  // |:edit|
+  public void testEditFileRelativeToContentRoot() {
+    final VirtualFile expected = addFile("b.txt");
+    addFile("a/b.txt");
+    configureByText("<caret>foo\n");
+    typeText(commandToKeys("edit b.txt"));
+    assertEquals(expected, getSelectedFile());
+  }
+
+  // |:edit|
+  public void testEditFileByNameInIndex() {
+    addFile("a/b/c.txt");
+    final VirtualFile expected = addFile("d/c.txt");
+    configureByText("<caret>foo\n");
+    typeText(commandToKeys("edit c.txt"));
+    assertEquals(expected, getSelectedFile());
+  }
+
+  // |:edit|
+  public void testEditFileByPathSuffixInIndex() {
+    final VirtualFile expected = addFile("a/b/c.txt");
+    addFile("d/c.txt");
+    configureByText("<caret>foo\n");
+    typeText(commandToKeys("edit b/c.txt"));
+    assertEquals(expected, getSelectedFile());
+  }
+
+  // |:edit|
+  public void testEditFileInDumbMode() {
+    final VirtualFile expected = addFile("a/b/c.txt");
+    configureByText("<caret>foo\n");
+    final DumbServiceImpl dumbService = DumbServiceImpl.getInstance(myFixture.getProject());
+    dumbService.setDumb(true);
+    try {
+      typeText(commandToKeys("edit c.txt"));
+    }
+    finally {
+      dumbService.setDumb(false);
+    }
+    assertEquals(expected, getSelectedFile());
+  }
+
+  // |:find|
+  public void testFindSingleFuzzyMatch() {
+    final VirtualFile expected = addFile("a/FooBar.txt");
+    addFile("a/Baz.txt");
+    configureByText("<caret>foo\n");
+    typeText(commandToKeys("find FoBa"));
+    assertEquals(expected, getSelectedFile());
+  }
+
+  // |:find|
+  public void testFindSeveralFuzzyMatches() {
+    addFile("a/FooBar.txt");
+    addFile("b/FooBaz.txt");
+    configureByText("<caret>foo\n");
+    final VirtualFile current = getSelectedFile();
+    typeText(commandToKeys("find FoBa"));
+    assertEquals(current, getSelectedFile());
+  }
+
+  @NotNull
+  private VirtualFile addFile(@NotNull String path) {
+    return myFixture.addFileToProject(path, "").getVirtualFile();
+  }
+
+  @Nullable
+  private VirtualFile getSelectedFile() {
+    final VirtualFile[] files = FileEditorManager.getInstance(myFixture.getProject()).getSelectedFiles();
+    return files.length > 0 ? files[0] : null;
+  }
+}
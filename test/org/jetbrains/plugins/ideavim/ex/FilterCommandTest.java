@@ -0,0 +1,71 @@
+package org.jetbrains.plugins.ideavim.ex;
+
+import com.intellij.util.ui.UIUtil;
+import com.maddyhome.idea.vim.VimPlugin;
+import org.jetbrains.plugins.ideavim.VimTestCase;
+
+import static com.maddyhome.idea.vim.helper.StringHelper.parseKeys;
+
+/**
+ * @author vlan
+ */
+public class FilterCommandTest extends VimTestCase {
+  // |:range!|
+  public void testFilterRange() {
+    configureByText("<caret>c\n" +
+                    "b\n" +
+                    "a\n" +
+                    "z\n");
+    typeText(commandToKeys("1,3!sort"));
+    UIUtil.dispatchAllInvocationEvents();
+    myFixture.checkResult("a\n" +
+                          "b\n" +
+                          "c\n" +
+                          "z\n");
+  }
+
+  // |:range!|
+  public void testFilterWithoutOutputAndNonzeroExitCode() {
+    configureByText("<caret>one\n" +
+                    "two\n");
+    typeText(commandToKeys("%!grep nomatch"));
+    UIUtil.dispatchAllInvocationEvents();
+    myFixture.checkResult("one\n" +
+                          "two\n");
+    assertEquals("shell returned 1", VimPlugin.getMessage());
+    assertPluginError(true);
+  }
+
+  // |:range!|
+  public void testFilterErrorOutputIsShown() {
+    configureByText("<caret>one\n");
+    typeText(commandToKeys("%!ls /nosuchdir"));
+    UIUtil.dispatchAllInvocationEvents();
+    myFixture.checkResult("one\n");
+    final String message = VimPlugin.getMessage();
+    assertNotNull(message);
+    assertTrue(message, message.startsWith("shell returned ") && message.contains("/nosuchdir"));
+  }
+
+  // |:range!| |:map|
+  public void testFilterInMappingRunsBeforeFollowingKeys() {
+    configureByText("<caret>c\n" +
+                    "b\n" +
+                    "a\n" +
+                    "z\n");
+    typeText(commandToKeys("nmap Q :1,3!sort<CR>dd"));
+    typeText(parseKeys("Q"));
+    myFixture.checkResult("b\n" +
+                          "c\n" +
+                          "z\n");
+  }
+
+  // |:!cmd|
+  public void testShellCommandOutput() {
+    configureByText("<caret>one\n");
+    typeText(commandToKeys("!echo hello"));
+    UIUtil.dispatchAllInvocationEvents();
+    assertExOutput("hello\n");
+    myFixture.checkResult("one\n");
+  }
+}
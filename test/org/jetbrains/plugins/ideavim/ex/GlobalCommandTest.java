@@ -0,0 +1,78 @@
+package org.jetbrains.plugins.ideavim.ex;
+
+import org.jetbrains.plugins.ideavim.VimTestCase;
+
+public class GlobalCommandTest extends VimTestCase {
+  // |:global|
+  public void testDeleteMatchingLines() {
+    doTest("g/a/d",
+           "<caret>one\n" +
+           "a\n" +
+           "two\n" +
+           "a\n" +
+           "three\n",
+           "one\n" +
+           "two\n" +
+           "three\n");
+  }
+
+  // |:vglobal|
+  public void testDeleteNotMatchingLines() {
+    doTest("v/a/d",
+           "<caret>one\n" +
+           "a\n" +
+           "two\n" +
+           "a\n",
+           "a\n" +
+           "a\n");
+  }
+
+  // |:global|
+  public void testInvertedGlobal() {
+    doTest("g!/a/d",
+           "<caret>one\n" +
+           "a\n" +
+           "two\n",
+           "a\n");
+  }
+
+  // |:global|
+  public void testSubstituteWithGlobalPattern() {
+    doTest("g/a/s//b/g",
+           "<caret>aa\n" +
+           "c\n" +
+           "ca\n",
+           "bb\n" +
+           "c\n" +
+           "cb\n");
+  }
+
+  // |:global|
+  public void testReverseLines() {
+    doTest("g/^/m0",
+           "<caret>one\n" +
+           "two\n" +
+           "three\n",
+           "three\n" +
+           "two\n" +
+           "one\n");
+  }
+
+  // |:global|
+  public void testRange() {
+    doTest("2,3g/a/d",
+           "<caret>a\n" +
+           "a\n" +
+           "b\n" +
+           "a\n",
+           "a\n" +
+           "b\n" +
+           "a\n");
+  }
+
+  private void doTest(final String command, String before, String after) {
+    myFixture.configureByText("a.java", before);
+    typeText(commandToKeys(command));
+    myFixture.checkResult(after);
+  }
+}
@@ -2,8 +2,13 @@ package org.jetbrains.plugins.ideavim.ex;
 
 import com.maddyhome.idea.vim.command.CommandState;
 import com.maddyhome.idea.vim.ex.vimscript.VimScriptParser;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.plugins.ideavim.VimTestCase;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
 import static com.maddyhome.idea.vim.helper.StringHelper.parseKeys;
 import static com.maddyhome.idea.vim.helper.StringHelper.stringToKeys;
 
@@ -31,6 +36,15 @@ public class MapCommandTest extends VimTestCase {
     assertOffset(6);
   }
 
+  public void testInsertMapPrefixFollowedByOtherKey() {
+    configureByText("<caret>\n");
+    typeText(commandToKeys("imap jk <Esc>"));
+    assertPluginError(false);
+    typeText(parseKeys("i", "jjx", "jk"));
+    myFixture.checkResult("jjx\n");
+    assertMode(CommandState.Mode.COMMAND);
+  }
+
   public void testBackslashEscape() {
     configureByText("\n");
     typeText(commandToKeys("imap \\\\,\\<,\\n foo"));
@@ -276,4 +290,33 @@ public class MapCommandTest extends VimTestCase {
     typeText(parseKeys(",z"));
     myFixture.checkResult("zzz\n");
   }
+
+  // |:source|
+  public void testSourceChangedFileIsParsedAgain() throws IOException {
+    configureByText("<caret>abc\n");
+    final File file = File.createTempFile("ideavimrc", null);
+    try {
+      writeFile(file, "nmap Q x\n");
+      assertEquals(1, VimScriptParser.parseFile(file).size());
+      assertSame(VimScriptParser.parseFile(file), VimScriptParser.parseFile(file));
+      writeFile(file, "nmap Q ~\nnmap W x\n");
+      file.setLastModified(file.lastModified() + 2000);
+      VimScriptParser.executeFile(file);
+      typeText(parseKeys("Q"));
+      myFixture.checkResult("Abc\n");
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  private static void writeFile(@NotNull File file, @NotNull String text) throws IOException {
+    final FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(text);
+    }
+    finally {
+      writer.close();
+    }
+  }
 }
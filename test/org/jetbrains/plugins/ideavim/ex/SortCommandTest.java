@@ -98,4 +98,34 @@ public class SortCommandTest extends VimTestCase {
     typeText(commandToKeys("sort"));
     myFixture.checkResult(" a\n b\n c\n whatever\n zee");
   }
+
+  public void testUniqueSort() {
+    myFixture.configureByText("a.txt", "b\na\nb\na\nc");
+    typeText(commandToKeys("sort u"));
+    myFixture.checkResult("a\nb\nc");
+  }
+
+  public void testNumberSortKeepsLinesWithoutNumbersFirst() {
+    myFixture.configureByText("a.txt", "b2\nx\na1\ny");
+    typeText(commandToKeys("sort n"));
+    myFixture.checkResult("x\ny\na1\nb2");
+  }
+
+  public void testHexSort() {
+    myFixture.configureByText("a.txt", "0x1F\n0xA\nff\n0x10");
+    typeText(commandToKeys("sort x"));
+    myFixture.checkResult("0xA\n0x10\n0x1F\nff");
+  }
+
+  public void testPatternSort() {
+    myFixture.configureByText("a.txt", "a3\nb1\nc2");
+    typeText(commandToKeys("sort /./"));
+    myFixture.checkResult("b1\nc2\na3");
+  }
+
+  public void testPatternMatchSort() {
+    myFixture.configureByText("a.txt", "x2y\na3b\nc1");
+    typeText(commandToKeys("sort /\\d/ r"));
+    myFixture.checkResult("c1\nx2y\na3b");
+  }
 }
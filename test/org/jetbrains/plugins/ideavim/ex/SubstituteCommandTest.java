@@ -104,6 +104,23 @@ public class SubstituteCommandTest extends VimTestCase {
            "aaa\nbbb\nbbb\nbbb\naaa\n");
   }
 
+  // |:substitute|
+  public void testJoinLines() {
+    doTest("%s/\\n\\(b\\)/ \\1/g",
+           "<caret>a\nb\nb\nc\nb\n",
+           "a b b\nc b\n");
+  }
+
+  // |:substitute|
+  public void testMarksFollowSubstitutedLines() {
+    myFixture.configureByText("a.java", "one,two,three\nfour\nfive\n");
+    typeText(parseKeys("j", "ma", "gg"));
+    typeText(commandToKeys("%s/,/\\r/g"));
+    typeText(parseKeys("'a"));
+    assertOffset(14);
+    myFixture.checkResult("one\ntwo\nthree\nfour\nfive\n");
+  }
+
   private void doTest(final String command, String before, String after) {
     myFixture.configureByText("a.java", before);
     typeText(commandToKeys(command));
@@ -1,8 +1,12 @@
 package org.jetbrains.plugins.ideavim.ex;
 
 import com.maddyhome.idea.vim.command.CommandState;
+import com.maddyhome.idea.vim.helper.LatencyStats;
 import org.jetbrains.plugins.ideavim.VimTestCase;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static com.maddyhome.idea.vim.helper.StringHelper.parseKeys;
 
 /**
@@ -38,4 +42,42 @@ public class VariousCommandsTest extends VimTestCase {
     myFixture.checkResult("f<caret>oo\n" +
                           "bar\n");
   }
+
+  // |:vimstats|
+  public void testVimStatsCountsActions() {
+    configureByText("<caret>foo\n" +
+                    "bar\n");
+    typeText(commandToKeys("vimstats on"));
+    try {
+      typeText(commandToKeys("vimstats clear"));
+      typeText(parseKeys("j", "k"));
+      assertTrue(LatencyStats.toJson().contains("{\"name\": \"VimMotionDown\", \"count\": 1,"));
+    }
+    finally {
+      typeText(commandToKeys("vimstats off"));
+    }
+    assertFalse(LatencyStats.isEnabled());
+  }
+
+  // |:vimstats|
+  public void testVimStatsBlockedTime() throws InterruptedException {
+    configureByText("<caret>foo\n");
+    typeText(commandToKeys("vimstats on"));
+    try {
+      typeText(commandToKeys("vimstats clear"));
+      final LatencyStats.Sample sample = LatencyStats.start("slowStep");
+      Thread.sleep(LatencyStats.FRAME_BUDGET_NANOS / 1000000 * 3);
+      LatencyStats.stop(sample);
+      final Matcher matcher = Pattern.compile("\"name\": \"slowStep\", \"count\": 1, \"totalNanos\": (\\d+),.*" +
+                                              "\"blockedNanos\": (\\d+)\\}").matcher(LatencyStats.toJson());
+      assertTrue(matcher.find());
+      final long total = Long.parseLong(matcher.group(1));
+      final long blocked = Long.parseLong(matcher.group(2));
+      assertEquals(total - LatencyStats.FRAME_BUDGET_NANOS, blocked);
+      assertTrue(LatencyStats.format().contains("blocked ms"));
+    }
+    finally {
+      typeText(commandToKeys("vimstats off"));
+    }
+  }
 }
@@ -1,17 +1,30 @@
 package org.jetbrains.plugins.ideavim.group;
 
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Ref;
+import com.intellij.util.ui.UIUtil;
 import com.maddyhome.idea.vim.VimPlugin;
 import com.maddyhome.idea.vim.command.Command;
 import com.maddyhome.idea.vim.group.SearchGroup;
+import com.maddyhome.idea.vim.helper.MessageHelper;
+import com.maddyhome.idea.vim.helper.Msg;
 import com.maddyhome.idea.vim.helper.RunnableHelper;
+import com.maddyhome.idea.vim.option.NumberOption;
 import com.maddyhome.idea.vim.option.Option;
 import com.maddyhome.idea.vim.option.Options;
 import com.maddyhome.idea.vim.option.ToggleOption;
+import com.maddyhome.idea.vim.regexp.LineIndex;
+import com.maddyhome.idea.vim.regexp.RegExp;
+import com.maddyhome.idea.vim.regexp.RegExpCache;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.plugins.ideavim.VimTestCase;
 
+import javax.swing.*;
+import java.awt.*;
+
 import static com.maddyhome.idea.vim.helper.StringHelper.parseKeys;
 
 /**
@@ -95,6 +108,75 @@ public class SearchGroupTest extends VimTestCase {
     assertEquals(-1, pos);
   }
 
+  // |/|
+  public void testNestedMultiWithoutBacktracking() {
+    Options.getInstance().getNumberOption("regexpengine").set(2);
+    final int pos = search("\\([a-z]\\+\\)\\+Q",
+                           "<caret>abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyz Q\n" +
+                           "abcQ\n");
+    assertEquals(55, pos);
+  }
+
+  // |/|
+  public void testRequiredLiteralIgnoringCase() {
+    final int pos = search("\\c\\<BAZ\\d",
+                           "<caret>foo baz\n" +
+                           "bar\n" +
+                           "xbaz1 Baz2\n");
+    assertEquals(18, pos);
+  }
+
+  // |/|
+  public void testMultiLineMatchInLaterLine() {
+    final int pos = search("two\\n\\zsthree",
+                           "<caret>one\n" +
+                           "two\n" +
+                           "two\n" +
+                           "three\n");
+    assertEquals(12, pos);
+  }
+
+  // |'hlsearch'| |'redrawtime'|
+  public void testHighlightTimeout() {
+    final Options options = Options.getInstance();
+    options.resetAllOptions();
+    final int pos = search("\\([a-z]\\+\\)\\+Q",
+                           "<caret>abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyz Q\n" +
+                           "abcQ\n");
+    assertEquals(55, pos);
+    options.getNumberOption("regexpengine").set(1);
+    options.getNumberOption("redrawtime").set(100);
+    final long aborted = RegExp.getAbortedMatches();
+    ((ToggleOption)options.getOption("hlsearch")).set();
+    assertTrue(RegExp.getAbortedMatches() > aborted);
+  }
+
+  // |/| |'redrawtime'|
+  public void testSearchTimeout() {
+    final Options options = Options.getInstance();
+    options.getNumberOption("regexpengine").set(1);
+    options.getNumberOption("redrawtime").set(100);
+    final String pattern = "\\([a-z]\\+\\)\\+Q";
+    typeTextInFile(parseKeys("/", pattern, "<Enter>"),
+                   "<caret>one\n" +
+                   "abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyz Q\n");
+    assertOffset(0);
+    assertEquals(MessageHelper.message(Msg.e_searchtimeout, pattern), VimPlugin.getMessage());
+  }
+
+  // |/| |'regexpengine'|
+  public void testNfaEngineRejectsBackReference() {
+    final Options options = Options.getInstance();
+    options.getNumberOption("regexpengine").set(2);
+    final String pattern = "\\(o\\)\\1";
+    typeTextInFile(parseKeys("/", pattern, "<Enter>"),
+                   "<caret>one\n" +
+                   "two foo\n");
+    assertOffset(0);
+    assertEquals(MessageHelper.message(Msg.e_nfaunsupported, pattern), VimPlugin.getMessage());
+    assertEquals(8, search("fo\\+", "<caret>one\ntwo foo\n"));
+  }
+
   // |/|
   public void testSearchMotion() {
     typeTextInFile(parseKeys("/", "two", "<Enter>"),
@@ -109,6 +191,206 @@ public class SearchGroupTest extends VimTestCase {
     assertOffset(7);
   }
   
+  // |n|
+  public void testSearchNextReusesCompiledPattern() {
+    typeTextInFile(parseKeys("/", "two", "<Enter>"),
+                   "<caret>one two\n" +
+                   "two three two\n");
+    final long misses = RegExpCache.getMisses();
+    typeText(parseKeys("n", "n"));
+    assertOffset(18);
+    assertEquals(misses, RegExpCache.getMisses());
+  }
+
+  // |/| |n|
+  public void testSearchInLargeDocumentInBackground() {
+    SearchGroup.setBackgroundSearchInTests(true);
+    try {
+      typeTextInFile(parseKeys("/", "bar", "<Enter>"), getLargeText());
+      assertOffset(0);
+      UIUtil.dispatchAllInvocationEvents();
+      assertOffset(500004);
+      typeText(parseKeys("gg", "n"));
+      UIUtil.dispatchAllInvocationEvents();
+      assertOffset(500004);
+    }
+    finally {
+      SearchGroup.setBackgroundSearchInTests(false);
+    }
+  }
+
+  // |/| |n|
+  public void testCanceledBackgroundSearchKeepsCaret() {
+    SearchGroup.setBackgroundSearchInTests(true);
+    try {
+      typeTextInFile(parseKeys("/", "bar", "<Enter>", "j"), getLargeText());
+      UIUtil.dispatchAllInvocationEvents();
+      assertOffset(5);
+      typeText(parseKeys("n"));
+      UIUtil.dispatchAllInvocationEvents();
+      assertOffset(500004);
+    }
+    finally {
+      SearchGroup.setBackgroundSearchInTests(false);
+    }
+  }
+
+  // |d| |n|
+  public void testDeleteToNextMatchInLargeDocument() {
+    SearchGroup.setBackgroundSearchInTests(true);
+    try {
+      typeTextInFile(parseKeys("/", "bar", "<Enter>"), getLargeText());
+      UIUtil.dispatchAllInvocationEvents();
+      typeText(parseKeys("gg", "dn"));
+    }
+    finally {
+      SearchGroup.setBackgroundSearchInTests(false);
+    }
+    myFixture.checkResult("bar\n");
+    assertOffset(0);
+  }
+
+  // |'hlsearch'|
+  public void testHighlightExtendedWhenScrolled() {
+    setHighlightSearch();
+    final StringBuilder builder = new StringBuilder("<caret>");
+    for (int i = 0; i < 1000; i++) {
+      builder.append("foo\n");
+    }
+    typeTextInFile(parseKeys("/", "foo", "<Enter>"), builder.toString());
+    final Editor editor = myFixture.getEditor();
+    final int lineHeight = editor.getLineHeight();
+    final JViewport viewport = ((EditorEx)editor).getScrollPane().getViewport();
+    viewport.setExtentSize(new Dimension(800, 10 * lineHeight));
+    viewport.setViewPosition(new Point(0, 800 * lineHeight));
+    final int start = editor.getDocument().getLineStartOffset(800);
+    int count = 0;
+    for (RangeHighlighter highlighter : editor.getMarkupModel().getAllHighlighters()) {
+      if (highlighter.getStartOffset() == start) {
+        assertNotNull(highlighter.getTextAttributes());
+        count++;
+      }
+    }
+    assertEquals(1, count);
+  }
+
+  // |/\\||
+  public void testEnginesAgreeOnBranches() {
+    assertEquals("0:1-0:3", assertSameMatch("ab\\|abc", "xabc\n", 0, 0, false));
+    assertEquals("0:0-0:4, 0:0-0:1, 0:1-0:4", assertSameMatch("\\(a\\|ab\\)\\(c\\|bcd\\)", "abcd\n", 0, 0, false));
+    assertEquals("0:0-0:1, none, 0:0-0:1", assertSameMatch("\\(x\\)\\|\\(y\\)", "y\n", 0, 0, false));
+  }
+
+  // |/\\{|
+  public void testEnginesAgreeOnBraces() {
+    assertEquals("0:1-0:4", assertSameMatch("a\\{2,3}", "baaaa\n", 0, 0, false));
+    assertEquals("0:1-0:2", assertSameMatch("a\\{-1,}", "baaaa\n", 0, 0, false));
+    assertEquals("0:0-0:3, 0:0-0:2", assertSameMatch("\\(a\\{-}\\)b", "aab\n", 0, 0, false));
+  }
+
+  // |/^| |/$| |/\\<| |/\\>|
+  public void testEnginesAgreeOnAnchors() {
+    assertEquals("0:4-0:7", assertSameMatch("\\<bar\\>$", "foo bar\n", 0, 0, false));
+    assertEquals("0:7-0:9", assertSameMatch("\\<ba", "foobar bar\n", 0, 0, false));
+    assertEquals("0:2-0:3", assertSameMatch("o\\>", "foo boo\n", 0, 0, false));
+    assertEquals("", assertSameMatch("^o", "foo\n", 0, 0, false));
+    assertEquals("", assertSameMatch("^o", "foo\n", 0, 1, false));
+  }
+
+  // |/\\n|
+  public void testEnginesAgreeOnNewlines() {
+    assertEquals("0:2-1:1", assertSameMatch("o\\nb", "foo\nbar\n", 0, 0, false));
+    assertEquals("0:2-1:3", assertSameMatch("o\\_s*b", "foo \n  bar\n", 0, 0, false));
+  }
+
+  // |/\\c| |'ignorecase'|
+  public void testEnginesAgreeOnIgnoreCase() {
+    assertEquals("0:1-0:4", assertSameMatch("\\cFOO", "xfoo\n", 0, 0, false));
+    assertEquals("0:1-0:4", assertSameMatch("FOO", "xfoo\n", 0, 0, true));
+    assertEquals("0:4-0:7", assertSameMatch("\\CFOO", "foo FOO\n", 0, 0, true));
+  }
+
+  // |/\\zs|
+  public void testEnginesAgreeOnMatchStart() {
+    assertEquals("0:3-0:6", assertSameMatch("foo\\zsbar", "foobar\n", 0, 0, false));
+    assertEquals("0:1-0:2, 0:0-0:1", assertSameMatch("\\(a\\)\\zsb", "ab\n", 0, 0, false));
+  }
+
+  // |/|
+  public void testEnginesAgreeFromColumn() {
+    assertEquals("0:2-0:3", assertSameMatch("o", "foo\n", 0, 2, false));
+    assertEquals("0:1-0:2", assertSameMatch("a\\|b", "abab\n", 0, 1, false));
+    assertEquals("0:2-0:2, 0:2-0:2", assertSameMatch("\\(x*\\)", "abc\n", 0, 2, false));
+    assertEquals("0:3-0:4", assertSameMatch("\\<b", "ab b\n", 0, 1, false));
+    assertEquals("0:1-0:2", assertSameMatch("a", "xa\nba\n", 1, 1, false));
+  }
+
+  /**
+   * Matches the pattern at the line and column of the text with the NFA and the backtracking engines and checks
+   * that both find the same match and submatches. Returns the positions of the match and its submatches.
+   */
+  @NotNull
+  private static String assertSameMatch(@NotNull String pattern, @NotNull String text, int lnum, int col,
+                                        boolean ic) {
+    final NumberOption engine = Options.getInstance().getNumberOption("regexpengine");
+    engine.set(2);
+    final RegExp.regprog_T prog = new RegExp().vim_regcomp(pattern, 1);
+    assertNotNull(prog);
+    engine.set(0);
+    final String nfa = match(prog, text, lnum, col, ic);
+    engine.set(1);
+    final String backtracking = match(prog, text, lnum, col, ic);
+    assertEquals(backtracking, nfa);
+    return nfa;
+  }
+
+  /**
+   * Returns the positions of the match and its submatches as "line:col-line:col" items, or an empty string if there
+   * is no match.
+   */
+  @NotNull
+  private static String match(@NotNull RegExp.regprog_T prog, @NotNull String text, int lnum, int col, boolean ic) {
+    final RegExp.regmmatch_T regmatch = new RegExp.regmmatch_T();
+    regmatch.regprog = prog;
+    regmatch.rmm_ic = ic;
+    final LineIndex buf = LineIndex.forText(text, 0);
+    if (new RegExp().vim_regexec_multi(regmatch, buf, buf.getLineCount(), lnum, col) == 0) {
+      return "";
+    }
+    int last = regmatch.startpos.length - 1;
+    while (last > 0 && (regmatch.startpos[last].lnum < 0 || regmatch.endpos[last].lnum < 0)) {
+      last--;
+    }
+    final StringBuilder res = new StringBuilder();
+    for (int i = 0; i <= last; i++) {
+      if (i > 0) {
+        res.append(", ");
+      }
+      final RegExp.lpos_T start = regmatch.startpos[i];
+      final RegExp.lpos_T end = regmatch.endpos[i];
+      if (start.lnum < 0 || end.lnum < 0) {
+        res.append("none");
+      }
+      else {
+        res.append(start.lnum).append(':').append(start.col).append('-').append(end.lnum).append(':').append(end.col);
+      }
+    }
+    return res.toString();
+  }
+
+  /**
+   * Returns a document large enough for the searches typed by the user to run in the background, with "bar" at 500004.
+   */
+  @NotNull
+  private static String getLargeText() {
+    final StringBuilder builder = new StringBuilder("<caret>");
+    for (int i = 0; i < 100000; i++) {
+      builder.append("line\n");
+    }
+    builder.append("foo bar\n");
+    return builder.toString();
+  }
+
   private void setHighlightSearch() {
     final Options options = Options.getInstance();
     options.resetAllOptions();
@@ -0,0 +1,116 @@
+package org.jetbrains.plugins.ideavim.helper;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.maddyhome.idea.vim.VimPlugin;
+import com.maddyhome.idea.vim.common.TextRange;
+import com.maddyhome.idea.vim.helper.CharacterHelper;
+import com.maddyhome.idea.vim.helper.WordCountIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.plugins.ideavim.VimTestCase;
+
+import static com.maddyhome.idea.vim.helper.StringHelper.parseKeys;
+
+/**
+ * @author vlan
+ */
+public class WordCountIndexTest extends VimTestCase {
+  // |g_CTRL-G|
+  public void testDeleteAcrossBlocks() {
+    configureLines(300);
+    typeText(parseKeys("60G", "10dd"));
+    assertCounts();
+  }
+
+  // |g_CTRL-G|
+  public void testChangeAcrossBlocks() {
+    configureLines(300);
+    typeText(parseKeys("62G", "4J", "127G", "cjfoo bar<Esc>"));
+    assertCounts();
+  }
+
+  // |g_CTRL-G|
+  public void testDeleteWholeBlocks() {
+    configureLines(500);
+    typeText(parseKeys("65G", "128dd"));
+    assertCounts();
+    typeText(parseKeys("gg", "dG"));
+    assertCounts();
+  }
+
+  // |g_CTRL-G|
+  public void testInsertAtEndOfFile() {
+    configureLines(130);
+    typeText(parseKeys("G", "Afoo bar<Esc>"));
+    assertCounts();
+    typeText(parseKeys("gg", "70yy", "G", "p"));
+    assertCounts();
+    typeText(parseKeys("Go", "baz<Esc>"));
+    assertCounts();
+  }
+
+  // |v_g_CTRL-G|
+  public void testVisualCountAfterEdits() {
+    configureLines(300);
+    typeText(parseKeys("63G", "3dd", "G", "70yy", "P", "40G", "wv", "100j", "e"));
+    assertCounts();
+    final Editor editor = myFixture.getEditor();
+    final TextRange range = VimPlugin.getMotion().getVisualRange(editor);
+    range.normalize();
+    final CharSequence text = editor.getDocument().getCharsSequence();
+    final WordCountIndex index = WordCountIndex.getInstance(editor.getDocument());
+    assertEquals(countWords(text, range.getStartOffset(), range.getEndOffset()),
+                 index.count(text, range.getStartOffset(), range.getEndOffset()));
+  }
+
+  private void configureLines(int count) {
+    final StringBuilder text = new StringBuilder("<caret>");
+    for (int i = 0; i < count; i++) {
+      if (i % 7 == 3) {
+        text.append("\n");
+      }
+      else {
+        text.append("  word").append(i).append(" a-b\tc\n");
+      }
+    }
+    configureByText(text.toString());
+    assertCounts();
+  }
+
+  /**
+   * Checks the counts of the index against a count of the whole document.
+   */
+  private void assertCounts() {
+    final Editor editor = myFixture.getEditor();
+    final Document doc = editor.getDocument();
+    final CharSequence text = doc.getCharsSequence();
+    final WordCountIndex index = WordCountIndex.getInstance(doc);
+    assertEquals(countWords(text, 0, text.length()), index.getCount());
+
+    final int offset = editor.getCaretModel().getOffset();
+    assertEquals(countWords(text, 0, Math.min(offset + 1, text.length())), index.countBefore(text, offset + 1));
+
+    for (int start = 0; start < text.length(); start += 97) {
+      final int end = Math.min(start + 1000, text.length());
+      assertEquals(countWords(text, 0, start), index.countBefore(text, start));
+      assertEquals(countWords(text, start, end), index.count(text, start, end));
+    }
+  }
+
+  /**
+   * Counts the WORDs with characters between the offsets.
+   */
+  private static int countWords(@NotNull CharSequence text, int start, int end) {
+    int count = 0;
+    for (int i = start; i < end; i++) {
+      if (!isWhite(text.charAt(i)) && (i == start || isWhite(text.charAt(i - 1)))) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static boolean isWhite(char c) {
+    return CharacterHelper.charType(c, true) == CharacterHelper.CharacterType.WHITESPACE;
+  }
+}